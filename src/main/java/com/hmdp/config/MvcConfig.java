@@ -1,6 +1,8 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.interceptor.AdminInterceptor;
 import com.hmdp.utils.interceptor.RefreshTokenInterceptor;
+import com.hmdp.utils.interceptor.SeckillRateLimitInterceptor;
 import com.hmdp.utils.interceptor.UserLoginInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -15,6 +17,12 @@ public class MvcConfig implements WebMvcConfigurer {
     @Autowired
     private RefreshTokenInterceptor refreshTokenInterceptor;
 
+    @Autowired
+    private SeckillRateLimitInterceptor seckillRateLimitInterceptor;
+
+    @Autowired
+    private AdminInterceptor adminInterceptor;
+
     /**
      * 用于Controller层的登录权限控制
      * 拦截器执行顺序默认是书写的顺序，也可以使用.sort(2)设置，数字越大优先级越低
@@ -23,6 +31,9 @@ public class MvcConfig implements WebMvcConfigurer {
      */
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        //秒杀限流放在最前面，被拒绝的请求不再访问Redis
+        registry.addInterceptor(seckillRateLimitInterceptor).addPathPatterns("/voucher-order/seckill/**");
+
         registry.addInterceptor(refreshTokenInterceptor).addPathPatterns("/**");
 
         //采用排除不需要拦截的请求地址
@@ -35,5 +46,8 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/user/code",
                 "/user/login"
         );
+
+        //管理接口只允许管理员访问
+        registry.addInterceptor(adminInterceptor).addPathPatterns("/cache/**", "/metrics/**");
     }
 }
@@ -1,10 +1,31 @@
 package com.hmdp.config;
 
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisLockFactory;
+import com.hmdp.utils.SeckillStockClient;
+import com.hmdp.utils.ShopBloomFilter;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
 
 @Configuration
 public class RedisConfig {
@@ -17,4 +38,36 @@ public class RedisConfig {
         //创建客户端
         return Redisson.create(config);
     }
+
+    /**
+     * 缓存值的编码方式：binary为紧凑的二进制编码（仍可读取已有的Json缓存），json为Hutool Json
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:binary}") String codec) {
+        if ("json".equals(codec)) {
+            return new JsonCacheCodec();
+        }
+        return new BinaryCacheCodec(Shop.class, ShopType.class, SeckillVoucher.class, UserDTO.class);
+    }
+
+    /**
+     * Redis发布订阅的监听容器，用于节点间同步本地状态
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory connectionFactory, SeckillStockClient seckillStockClient,
+            RedisLockFactory redisLockFactory, CacheClient cacheClient, ShopBloomFilter shopBloomFilter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //秒杀券售罄、补充库存通知
+        container.addMessageListener(seckillStockClient, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        container.addMessageListener(seckillStockClient, new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+        //分布式锁释放通知
+        container.addMessageListener(redisLockFactory, new ChannelTopic(LOCK_RELEASE_CHANNEL));
+        //缓存删除通知，清除本地缓存
+        container.addMessageListener(cacheClient, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //新增商铺通知，写入本地布隆过滤器
+        container.addMessageListener(shopBloomFilter, new ChannelTopic(BLOOM_SHOP_ADD_CHANNEL));
+        return container;
+    }
 }
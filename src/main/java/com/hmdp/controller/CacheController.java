@@ -0,0 +1,35 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.ShopCacheWarmer;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存管理
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    /**
+     * 在后台预热商铺缓存，忽略最近一次预热的记录，仅管理员可用，两次触发有最小间隔
+     *
+     * @return
+     */
+    @PostMapping("warmup/shop")
+    public Result warmUpShop() {
+        if (!shopCacheWarmer.trigger()) {
+            return Result.fail("商铺缓存正在预热或刚预热过，请稍后再试");
+        }
+        return Result.ok();
+    }
+}
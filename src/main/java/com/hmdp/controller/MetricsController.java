@@ -0,0 +1,45 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.LockMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 运行指标
+ * </p>
+ */
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+    @Resource
+    private LockMetrics lockMetrics;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    /**
+     * 分布式锁的争用统计
+     *
+     * @return
+     */
+    @GetMapping("locks")
+    public Result queryLockMetrics() {
+        return Result.ok(lockMetrics.snapshot());
+    }
+
+    /**
+     * 缓存重建线程池的队列长度、重建耗时、失败和丢弃次数
+     *
+     * @return
+     */
+    @GetMapping("cache")
+    public Result queryCacheMetrics() {
+        return Result.ok(cacheRebuildExecutor.snapshot());
+    }
+}
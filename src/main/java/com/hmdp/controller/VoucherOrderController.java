@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -28,4 +29,44 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 进入秒杀等候室排队
+     * @param voucherId 优惠券id
+     * @return 排队凭证和位置
+     */
+    @PostMapping("queue/{id}")
+    public Result enqueueSeckill(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.enqueueSeckill(voucherId);
+    }
+
+    /**
+     * 查询秒杀等候室排队状态
+     * @param voucherId 优惠券id
+     * @return 排队状态，PASSED后可以下单
+     */
+    @GetMapping("queue/{id}")
+    public Result querySeckillQueue(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.querySeckillQueue(voucherId);
+    }
+
+    /**
+     * 查询订单状态
+     * @param orderId 订单id
+     * @return 订单状态：QUEUED、PERSISTED、FAILED
+     */
+    @GetMapping("status/{orderId}")
+    public Result queryOrderStatus(@PathVariable("orderId") Long orderId) {
+        return voucherOrderService.queryOrderStatus(orderId);
+    }
+
+    /**
+     * 查询当前用户在某个优惠券下的订单状态
+     * @param voucherId 优惠券id
+     * @return 订单状态：QUEUED、PERSISTED、FAILED
+     */
+    @GetMapping("status/voucher/{voucherId}")
+    public Result queryOrderStatusByVoucher(@PathVariable("voucherId") Long voucherId) {
+        return voucherOrderService.queryOrderStatusByVoucher(voucherId);
+    }
 }
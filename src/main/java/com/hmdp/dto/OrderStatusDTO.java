@@ -0,0 +1,18 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class OrderStatusDTO {
+    public static final String QUEUED = "QUEUED";
+    public static final String PERSISTED = "PERSISTED";
+    public static final String FAILED = "FAILED";
+
+    private Long orderId;
+    private Long voucherId;
+    private Long userId;
+    /**
+     * 订单状态：QUEUED排队写入中，PERSISTED已写入数据库，FAILED下单失败
+     */
+    private String status;
+}
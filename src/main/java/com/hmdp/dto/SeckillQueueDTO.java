@@ -0,0 +1,27 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class SeckillQueueDTO {
+    public static final String WAITING = "WAITING";
+    public static final String PASSED = "PASSED";
+    public static final String NONE = "NONE";
+
+    /**
+     * 排队状态：WAITING排队中，PASSED已放行可以下单，NONE未排队
+     */
+    private String status;
+    /**
+     * 排队凭证
+     */
+    private String ticket;
+    /**
+     * 前面还有多少人
+     */
+    private Long position;
+    /**
+     * 建议多久后再查询（毫秒）
+     */
+    private Long retryAfter;
+}
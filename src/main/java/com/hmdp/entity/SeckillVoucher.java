@@ -57,5 +57,15 @@ public class SeckillVoucher implements Serializable {
      */
     private LocalDateTime updateTime;
 
+    /**
+     * 最近一次扣减库存的写锁fencing token
+     */
+    private Long fencingToken;
+
+    /**
+     * 库存分段数，大于1时秒杀库存分散到多个Redis key
+     */
+    private Integer segments;
+
 
 }
@@ -78,6 +78,18 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 库存分段数，大于1时秒杀库存分散到多个Redis key
+     */
+    @TableField(exist = false)
+    private Integer segments;
+
+    /**
+     * 是否开启秒杀等候室，开启后用户需排队拿到通行证才能下单
+     */
+    @TableField(exist = false)
+    private Boolean waitingRoom;
+
     /**
      * 生效时间
      */
@@ -17,6 +17,8 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result saveShop(Shop shop);
+
     @Transactional
     Result update(Shop shop);
 }
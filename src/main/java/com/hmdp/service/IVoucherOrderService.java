@@ -5,6 +5,9 @@ import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  * 服务类
@@ -17,6 +20,14 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
+    Result enqueueSeckill(Long voucherId);
+
+    Result querySeckillQueue(Long voucherId);
+
+    Result queryOrderStatus(Long orderId);
+
+    Result queryOrderStatusByVoucher(Long voucherId);
+
     @Transactional
-    Result createVoucherOrder(Long voucherId);
+    List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders, Map<Long, Long> fencingTokens);
 }
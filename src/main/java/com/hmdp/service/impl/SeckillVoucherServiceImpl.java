@@ -1,10 +1,35 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.RedisLockFactory;
+import com.hmdp.utils.SeckillStockClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RECONCILE_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_RECONCILE_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_VERSION_KEY;
 
 /**
  * <p>
@@ -14,7 +39,190 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2022-01-04
  */
+@Slf4j
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
+    /**
+     * 不存在的秒杀券id在本地缓存的时间（毫秒）
+     */
+    private static final long MISSING_VOUCHER_TTL = 5000L;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 秒杀券信息的本地缓存，只用于判断秒杀时间，库存以Redis为准
+     */
+    private final LRUCache<Long, SeckillVoucher> localCache = CacheUtil.newLRUCache(1024);
+
+    /**
+     * 不存在的秒杀券id，有效期较短，避免不存在的id每次都查询数据库
+     */
+    private final LRUCache<Long, Boolean> missingCache = CacheUtil.newLRUCache(4096, MISSING_VOUCHER_TTL);
+
+    @Autowired
+    private SeckillStockClient seckillStockClient;
+
+    @Autowired
+    private VoucherOrderMapper voucherOrderMapper;
+
+    @Autowired
+    private RedisLockFactory redisLockFactory;
+
+    /**
+     * 核对出库存不一致时是否修复Redis库存，默认只报告
+     */
+    @Value("${hmdp.seckill.reconcile-repair:false}")
+    private boolean reconcileRepair;
+
+    /**
+     * 上一次核对出的库存偏差，只在持有核对锁的节点上有意义
+     */
+    private final Map<Long, Integer> drifts = new ConcurrentHashMap<>();
+
+    /**
+     * 本地缓存对应的版本号，与Redis中的版本号不一致时清空本地缓存
+     */
+    private volatile String version;
+
+    /**
+     * 查询秒杀券信息，优先查本地缓存
+     *
+     * @param voucherId
+     * @return
+     */
+    @Override
+    public SeckillVoucher queryCachedById(Long voucherId) {
+        SeckillVoucher seckillVoucher = localCache.get(voucherId);
+        if (seckillVoucher != null) {
+            return seckillVoucher;
+        }
+        if (missingCache.containsKey(voucherId)) {
+            return null;
+        }
+        seckillVoucher = getById(voucherId);
+        if (seckillVoucher == null) {
+            missingCache.put(voucherId, Boolean.TRUE);
+            return null;
+        }
+        localCache.put(voucherId, seckillVoucher);
+        return seckillVoucher;
+    }
+
+    @Override
+    public boolean save(SeckillVoucher entity) {
+        boolean success = super.save(entity);
+        bumpVersion();
+        return success;
+    }
+
+    @Override
+    public boolean updateById(SeckillVoucher entity) {
+        boolean success = super.updateById(entity);
+        bumpVersion();
+        return success;
+    }
+
+    /**
+     * 每秒检查一次版本号，其他节点修改过秒杀券信息时清空本地缓存
+     */
+    @Scheduled(fixedDelay = 1000L)
+    public void checkVersion() {
+        String current = stringRedisTemplate.opsForValue().get(SECKILL_VOUCHER_VERSION_KEY);
+        if (current != null && !current.equals(version)) {
+            localCache.clear();
+            missingCache.clear();
+            version = current;
+        }
+    }
+
+    /**
+     * 核对Redis库存和数据库库存，项目启动后先执行一次，完成预热
+     * Redis剩余库存 应等于 数据库库存 - 已抢到但还未写入数据库的订单数（Redis已下单用户数 - 数据库订单数）
+     * 订单异步写入期间两边会短暂不一致，连续两次核对出相同偏差才认为库存不一致
+     * 每轮只有抢到核对锁的节点执行，预热和修复不会被多个节点重复执行
+     */
+    @Scheduled(initialDelay = 5000L, fixedDelayString = "${hmdp.seckill.reconcile-interval:60000}")
+    public void reconcileStock() {
+        ILock lock = redisLockFactory.getLock(LOCK_RECONCILE_KEY);
+        if (!lock.tryLock(LOCK_RECONCILE_TTL)) {
+            //其他节点正在核对，本节点之前记录的偏差已过时
+            drifts.clear();
+            return;
+        }
+        try {
+            List<SeckillVoucher> vouchers = query().gt("end_time", LocalDateTime.now()).list();
+            for (SeckillVoucher seckillVoucher : vouchers) {
+                try {
+                    reconcileStock(seckillVoucher);
+                } catch (Exception e) {
+                    log.error("核对秒杀券{}库存异常", seckillVoucher.getVoucherId(), e);
+                }
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private void reconcileStock(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        //1. Redis中没有库存，按数据库预热，使用原来的分段数，已下单用户从数据库恢复
+        Integer redisStock = seckillStockClient.queryStock(voucherId);
+        if (redisStock == null) {
+            Integer segments = seckillVoucher.getSegments();
+            if (segments == null) {
+                segments = seckillStockClient.segments(voucherId);
+            }
+            log.info("预热秒杀券{}，库存{}，分段数{}", voucherId, seckillVoucher.getStock(), segments);
+            seckillStockClient.preload(voucherId, seckillVoucher.getStock(),
+                    seckillVoucher.getBeginTime(), seckillVoucher.getEndTime(), segments);
+            List<Long> userIds = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                            .select("user_id").eq("voucher_id", voucherId))
+                    .stream().map(o -> ((Number) o).longValue()).collect(Collectors.toList());
+            seckillStockClient.loadBuyers(voucherId, userIds);
+            return;
+        }
+
+        //2. 查询数据库中的订单数
+        long persisted = voucherOrderMapper.selectCount(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+
+        //3. 计算偏差
+        long pending = seckillStockClient.queryBuyerCount(voucherId) - persisted;
+        long expected = seckillVoucher.getStock() - pending;
+        int drift = (int) (redisStock - expected);
+        Integer lastDrift = drifts.put(voucherId, drift);
+        if (drift == 0 || lastDrift == null || lastDrift != drift) {
+            return;
+        }
+
+        //4. 连续两次偏差相同，报告并按配置修复
+        log.error("秒杀券{}库存不一致：Redis剩余{}，数据库库存{}，待写入订单{}", voucherId, redisStock, seckillVoucher.getStock(), pending);
+        if (reconcileRepair && expected >= 0) {
+            seckillStockClient.adjustStock(voucherId, -drift);
+            drifts.remove(voucherId);
+        }
+    }
+
+    /**
+     * 秒杀券信息修改后递增版本号，在事务提交后执行，防止其他节点读到未提交的旧数据
+     */
+    private void bumpVersion() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doBumpVersion();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                doBumpVersion();
+            }
+        });
+    }
 
+    private void doBumpVersion() {
+        Long current = stringRedisTemplate.opsForValue().increment(SECKILL_VOUCHER_VERSION_KEY);
+        localCache.clear();
+        missingCache.clear();
+        version = String.valueOf(current);
+    }
 }
@@ -1,11 +1,11 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -29,6 +29,9 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private CacheCodec cacheCodec;
+
     /**
      * 使用Redis缓存首页店铺分类功能
      *
@@ -45,10 +48,14 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
             List<String> typeList = stringRedisTemplate.opsForList().range(CACHE_SHOP_TYPE_KEY, 0, size);
             //返回前将List<String>转为List<ShopType>
             List<ShopType> shopTypes = typeList.stream().map(s -> {
-                ShopType shopType = JSONUtil.toBean(s, ShopType.class);
+                ShopType shopType = cacheCodec.decode(s, ShopType.class);
                 return shopType;
             }).collect(Collectors.toList());
-            return shopTypes;
+            if (!shopTypes.contains(null)) {
+                return shopTypes;
+            }
+            //有无法识别的格式（如切换了编码方式），删除后重新缓存
+            stringRedisTemplate.delete(CACHE_SHOP_TYPE_KEY);
         }
 
         //3. 没有，查数据库
@@ -63,7 +70,7 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         //5. 数据库有，使用Redis缓存，并返回
         //返回前将List<ShopType>转为List<String>
         List<String> typeListToStrings = typeList.stream().map(shopType -> {
-            return JSONUtil.toJsonStr(shopType);
+            return cacheCodec.encode(shopType);
         }).collect(Collectors.toList());
         stringRedisTemplate.opsForList().leftPushAll(CACHE_SHOP_TYPE_KEY, typeListToStrings);
 
@@ -1,5 +1,7 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.OrderStatusDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
@@ -7,17 +9,42 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.FencingTokenException;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.OrderStatusCache;
+import com.hmdp.utils.RedisLockFactory;
 import com.hmdp.utils.RedisWorker;
-import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SeckillStockClient;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.UserHolder;
-import org.springframework.aop.framework.AopContext;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -27,6 +54,7 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
@@ -36,100 +64,549 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Autowired
     private RedisWorker redisWorker;
 
+    @Autowired
+    private SeckillStockClient seckillStockClient;
+
+    @Autowired
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    @Autowired
+    private OrderStatusCache orderStatusCache;
+
+    @Autowired
+    private RedisLockFactory redisLockFactory;
+
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Lazy
+    @Autowired
+    private IVoucherOrderService proxy;
+
+    @Value("${hmdp.seckill.consumer:c1}")
+    private String consumerName;
+
+    /**
+     * 每批最多写入的订单数
+     */
+    @Value("${hmdp.seckill.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 每批最长等待时间（毫秒）
+     */
+    @Value("${hmdp.seckill.batch-interval:50}")
+    private long batchInterval;
+
+    private static final DefaultRedisScript<Long> STREAM_GROUP_SCRIPT;
+
+    static {
+        STREAM_GROUP_SCRIPT = new DefaultRedisScript<>();
+        STREAM_GROUP_SCRIPT.setLocation(new ClassPathResource("stream-group.lua"));
+        STREAM_GROUP_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 其他消费者的消息超过该时间未确认，认为其已宕机，由当前消费者接管
+     */
+    private static final Duration ORDER_CLAIM_IDLE = Duration.ofMinutes(1);
+
+    /**
+     * 消息最多投递的次数，超过后移入死信队列，不再阻塞后续订单
+     */
+    private static final long ORDER_MAX_DELIVERIES = 10L;
+
+    /**
+     * pending-list处理失败后的最长重试间隔（毫秒）
+     */
+    private static final long ORDER_RETRY_MAX_BACKOFF = 5000L;
+
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private volatile boolean running = true;
+
+    /**
+     * 项目启动后创建消费者组，并开启独立线程消费订单消息
+     */
+    @PostConstruct
+    private void init() {
+        stringRedisTemplate.execute(
+                STREAM_GROUP_SCRIPT,
+                Collections.singletonList(SECKILL_ORDER_STREAM_KEY),
+                SECKILL_ORDER_GROUP
+        );
+        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        SECKILL_ORDER_EXECUTOR.shutdown();
+    }
+
+    /**
+     * 订单消息消费者：从stream.orders读取订单，攒够batchSize条或等待batchInterval毫秒后批量写入数据库
+     */
+    private class VoucherOrderHandler implements Runnable {
+
+        private final List<MapRecord<String, Object, Object>> buffer = new ArrayList<>();
+
+        /**
+         * 当前批次必须提交的时间点
+         */
+        private long deadline;
+
+        @Override
+        public void run() {
+            //1. 启动时先处理上次宕机遗留的pending-list
+            handlePendingList();
+            while (running) {
+                try {
+                    //2. 批次已到期，提交
+                    long wait = buffer.isEmpty() ? 2000L : deadline - System.currentTimeMillis();
+                    if (!buffer.isEmpty() && wait <= 0) {
+                        flush();
+                        continue;
+                    }
+                    //3. 获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT n BLOCK wait STREAMS stream.orders >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(batchSize - buffer.size()).block(Duration.ofMillis(wait)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed())
+                    );
+                    //4. 没有消息，空闲时接管宕机消费者的消息，继续下一次循环
+                    if (list == null || list.isEmpty()) {
+                        if (buffer.isEmpty()) {
+                            claimIdleOrders();
+                        }
+                        continue;
+                    }
+                    //5. 有消息，放入当前批次，攒满则提交
+                    if (buffer.isEmpty()) {
+                        deadline = System.currentTimeMillis() + batchInterval;
+                    }
+                    buffer.addAll(list);
+                    if (buffer.size() >= batchSize) {
+                        flush();
+                    }
+                } catch (Exception e) {
+                    log.error("处理订单异常", e);
+                    //未确认的消息都还在pending-list中，清空批次后重新处理
+                    buffer.clear();
+                    handlePendingList();
+                }
+            }
+        }
+
+        /**
+         * 处理已读取但未确认的消息
+         */
+        private void handlePendingList() {
+            int failures = 0;
+            while (running) {
+                try {
+                    //1. 获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT n STREAMS stream.orders 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.from("0"))
+                    );
+                    //2. pending-list没有消息，结束
+                    if (list == null || list.isEmpty()) {
+                        break;
+                    }
+                    //3. 有消息，批量创建订单并ACK确认
+                    buffer.addAll(list);
+                    flush();
+                    failures = 0;
+                } catch (Exception e) {
+                    log.error("处理pending-list订单异常", e);
+                    //整批失败，逐条重试，投递次数超过上限的消息移入死信队列
+                    retryOneByOne();
+                    //退避重试，数据库短暂不可用时不会很快耗尽投递次数
+                    long backoff = Math.min(20L << Math.min(failures++, 10), ORDER_RETRY_MAX_BACKOFF);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 逐条重新提交当前批次，找出无法处理的消息
+         * 仍然失败且投递次数达到上限的消息移入死信队列并ACK，订单记为失败；其他消息留在pending-list等待下次重试
+         */
+        private void retryOneByOne() {
+            List<MapRecord<String, Object, Object>> records = new ArrayList<>(buffer);
+            buffer.clear();
+            for (MapRecord<String, Object, Object> record : records) {
+                buffer.add(record);
+                try {
+                    flush();
+                } catch (Exception e) {
+                    buffer.clear();
+                    if (deliveryCount(record.getId()) >= ORDER_MAX_DELIVERIES) {
+                        deadLetter(record, e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 查询消息的投递次数 XPENDING stream.orders g1 id id 1
+         *
+         * @param id
+         * @return 消息已不在pending-list中时返回0
+         */
+        private long deliveryCount(RecordId id) {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, Range.closed(id.getValue(), id.getValue()), 1L);
+            return pending.isEmpty() ? 0L : pending.get(0).getTotalDeliveryCount();
+        }
+
+        /**
+         * 消息移入死信队列并ACK，能解析出订单时记为下单失败
+         *
+         * @param record
+         * @param e      最后一次处理的异常
+         */
+        private void deadLetter(MapRecord<String, Object, Object> record, Exception e) {
+            Map<String, String> value = new HashMap<>(record.getValue().size() + 2);
+            record.getValue().forEach((k, v) -> value.put(String.valueOf(k), String.valueOf(v)));
+            value.put("sourceId", record.getId().getValue());
+            value.put("error", String.valueOf(e.getMessage()));
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_KEY, value);
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, record.getId());
+            log.error("订单消息{}投递{}次仍处理失败，已移入死信队列", record.getId(), ORDER_MAX_DELIVERIES, e);
+            try {
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+                if (voucherOrder.getId() != null && voucherOrder.getVoucherId() != null && voucherOrder.getUserId() != null) {
+                    orderStatusCache.markFailed(Collections.singletonList(voucherOrder));
+                }
+            } catch (Exception ex) {
+                log.error("死信消息{}无法解析为订单", record.getId(), ex);
+            }
+        }
+
+        /**
+         * 接管长时间未确认的消息（对应的消费者可能已经宕机），再按pending-list处理
+         */
+        private void claimIdleOrders() {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, Range.unbounded(), 100L);
+            List<RecordId> ids = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumerName.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(ORDER_CLAIM_IDLE) >= 0) {
+                    ids.add(message.getId());
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            byte[] key = stringRedisTemplate.getStringSerializer().serialize(SECKILL_ORDER_STREAM_KEY);
+            stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.xClaimJustId(
+                    key, SECKILL_ORDER_GROUP, consumerName,
+                    RedisStreamCommands.XClaimOptions.minIdle(ORDER_CLAIM_IDLE).ids(ids.toArray(new RecordId[0]))
+            ));
+            handlePendingList();
+        }
+
+        /**
+         * 提交当前批次：一个事务写入所有订单，再一次性ACK
+         */
+        private void flush() {
+            List<VoucherOrder> voucherOrders = new ArrayList<>(buffer.size());
+            RecordId[] ids = new RecordId[buffer.size()];
+            for (int i = 0; i < buffer.size(); i++) {
+                MapRecord<String, Object, Object> record = buffer.get(i);
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                ids[i] = record.getId();
+            }
+            List<VoucherOrder> failedOrders;
+            try {
+                failedOrders = writeOrders(voucherOrders);
+            } catch (FencingTokenException e) {
+                //token落后于数据库：Redis丢失计数器时提高到数据库的值，写锁被接管时也只是多等一次锁，重试一次
+                if (redisLockFactory.raiseFencingToken(e.getName(), e.getStoredToken())) {
+                    log.warn("锁{}的fencing token计数器落后于数据库，已提高到{}", e.getName(), e.getStoredToken());
+                }
+                failedOrders = writeOrders(voucherOrders);
+            }
+            //记录订单状态，供客户端查询
+            if (!failedOrders.isEmpty()) {
+                voucherOrders.removeAll(failedOrders);
+                orderStatusCache.markFailed(failedOrders);
+                //释放失败订单的一人一单记录，补货后用户可以重新抢购
+                seckillStockClient.releaseBuyers(failedOrders);
+            }
+            orderStatusCache.markPersisted(voucherOrders);
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, ids);
+            buffer.clear();
+        }
+
+        /**
+         * 按优惠券获取写锁后在一个事务中写入订单，id排序加锁避免多个消费者互相等待
+         *
+         * @param voucherOrders
+         * @return 因库存不足未能写入的订单
+         */
+        private List<VoucherOrder> writeOrders(List<VoucherOrder> voucherOrders) {
+            List<Long> voucherIds = voucherOrders.stream().map(VoucherOrder::getVoucherId)
+                    .distinct().sorted().collect(Collectors.toList());
+            List<ILock> locks = new ArrayList<>(voucherIds.size());
+            Map<Long, Long> fencingTokens = new HashMap<>(voucherIds.size());
+            try {
+                for (Long voucherId : voucherIds) {
+                    ILock lock = redisLockFactory.getLock(LOCK_ORDER_KEY + voucherId);
+                    Long token = lock.lockWithToken(LOCK_ORDER_TTL, LOCK_ORDER_WAIT);
+                    if (token == null) {
+                        throw new IllegalStateException("获取优惠券" + voucherId + "的写锁超时");
+                    }
+                    locks.add(lock);
+                    fencingTokens.put(voucherId, token);
+                }
+                return proxy.createVoucherOrders(voucherOrders, fencingTokens);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                for (ILock lock : locks) {
+                    lock.unLock();
+                }
+            }
+        }
+    }
+
     /**
      * 秒杀优惠券下单
+     * 时间窗口、库存、一人一单都在Redis中原子判断，抢到名额后订单写入消息队列，由后台线程异步写入数据库
      *
      * @param voucherId
      * @return
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
-        //1. 查询优惠券信息
-        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
-
-        //2. 判断秒杀是否开始
+        //已售罄，直接返回，不访问Redis和数据库
+        if (seckillStockClient.isSoldOut(voucherId)) {
+            return Result.fail(seckillFailMessage(SeckillStockClient.NO_STOCK));
+        }
+        //根据本地缓存的秒杀券信息判断秒杀时间，最终以Redis中的判断为准
+        SeckillVoucher seckillVoucher = seckillVoucherService.queryCachedById(voucherId);
+        if (seckillVoucher == null) {
+            return Result.fail(seckillFailMessage(SeckillStockClient.NOT_FOUND));
+        }
         LocalDateTime now = LocalDateTime.now();
-        LocalDateTime beginTime = seckillVoucher.getBeginTime();
-        LocalDateTime endTime = seckillVoucher.getEndTime();
-        if (beginTime.isAfter(now)) {
-            //3. 否，返回异常结果
-            return Result.fail("抢购时间未到！");
+        if (seckillVoucher.getBeginTime().isAfter(now)) {
+            return Result.fail(seckillFailMessage(SeckillStockClient.NOT_BEGIN));
+        }
+        if (seckillVoucher.getEndTime().isBefore(now)) {
+            return Result.fail(seckillFailMessage(SeckillStockClient.ENDED));
+        }
+        Long userId = UserHolder.getUser().getId();
+        //开启了等候室的优惠券，需要先排队拿到通行证
+        boolean inRoom = seckillWaitingRoom.isOpen(voucherId);
+        if (inRoom && !seckillWaitingRoom.hasPass(voucherId, userId)) {
+            return Result.fail("请先排队，等待放行后再抢购！");
         }
-        if (endTime.isBefore(now)) {
-            return Result.fail("抢购时间已结束！");
+        long orderId = redisWorker.nextId("order");
+
+        //1. 判断购买资格，有资格则发送订单消息
+        int r = seckillStockClient.admit(voucherId, userId, orderId);
+
+        //2. 不为0，没有购买资格
+        if (r != SeckillStockClient.OK) {
+            return Result.fail(seckillFailMessage(r));
         }
 
-        //4. 是，判断库存是否充足
-        if (seckillVoucher.getStock() < 1) {
-            //5. 否，返回异常结果
-            return Result.fail("抢购完了，下次再来吧");
+        //3. 为0，有购买资格，抢到名额后才使用通行证
+        if (inRoom) {
+            seckillWaitingRoom.usePass(voucherId, userId);
         }
 
+        //4. 记录订单排队状态，直接返回订单id
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(orderId);
+        voucherOrder.setUserId(userId);
+        voucherOrder.setVoucherId(voucherId);
+        orderStatusCache.markQueued(voucherOrder);
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 进入秒杀等候室排队
+     *
+     * @param voucherId
+     * @return 排队状态
+     */
+    @Override
+    public Result enqueueSeckill(Long voucherId) {
+        if (!seckillWaitingRoom.isOpen(voucherId)) {
+            return Result.fail("该优惠券无需排队！");
+        }
         Long userId = UserHolder.getUser().getId();
-//        //1.0 上锁，用户id当锁，这样就实现一个用户一把锁
-//        synchronized (userId.toString().intern()) {
-//            //获取代理对象（事务）
-//            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-//            return proxy.createVoucherOrder(voucherId);
-//        }
-        //2.0 手动上锁
-        SimpleRedisLock lock = new SimpleRedisLock("order" + userId, stringRedisTemplate);
-        boolean isLock = lock.tryLock(1000L);
-        if (!isLock) {
-            //如果获取锁失败，返回错误信息
-            return Result.fail("一人只能下一单！");
-        }
-        try {
-            //获取锁成功，就下单
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
-        } finally {
-            lock.unLock();
+        return Result.ok(seckillWaitingRoom.enqueue(voucherId, userId));
+    }
+
+    /**
+     * 查询秒杀等候室排队状态
+     *
+     * @param voucherId
+     * @return 排队状态
+     */
+    @Override
+    public Result querySeckillQueue(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        return Result.ok(seckillWaitingRoom.status(voucherId, userId));
+    }
+
+    /**
+     * 根据购买资格判断结果获取失败信息
+     *
+     * @param r
+     * @return
+     */
+    private String seckillFailMessage(int r) {
+        switch (r) {
+            case SeckillStockClient.NO_STOCK:
+                return "抢购完了，下次再来吧";
+            case SeckillStockClient.REPEAT:
+                return "同一用户只能下一单！";
+            case SeckillStockClient.NOT_BEGIN:
+                return "抢购时间未到！";
+            case SeckillStockClient.ENDED:
+                return "抢购时间已结束！";
+            default:
+                return "优惠券不存在！";
+        }
+    }
+
+    /**
+     * 将消息队列中的一批订单写入数据库
+     * 每个优惠券只执行一次 stock = stock - k，所有订单用一条多行INSERT写入，整个批次一次提交
+     * 消息可能因pending-list重试而重复投递，已存在的订单直接忽略
+     * 扣减库存时带上写锁的fencing token，写锁过期后被其他消费者接管时，旧批次的写入会被拒绝并整体回滚
+     *
+     * @param voucherOrders
+     * @param fencingTokens 优惠券id -> 写锁的fencing token
+     * @return 因库存不足未能写入的订单
+     */
+    @Override
+    public List<VoucherOrder> createVoucherOrders(List<VoucherOrder> voucherOrders, Map<Long, Long> fencingTokens) {
+        //1. 去掉已经写入过的订单（重复消息）
+        Map<Long, VoucherOrder> orderMap = new LinkedHashMap<>(voucherOrders.size());
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.put(voucherOrder.getId(), voucherOrder);
+        }
+        for (VoucherOrder existed : this.listByIds(orderMap.keySet())) {
+            log.error("订单{}重复写入，已忽略", existed.getId());
+            orderMap.remove(existed.getId());
         }
+        if (orderMap.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        //2. 按优惠券聚合，扣减库存，采用乐观锁，解决超卖问题
+        Map<Long, List<VoucherOrder>> voucherMap = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        List<VoucherOrder> saveOrders = new ArrayList<>(orderMap.size());
+        List<VoucherOrder> failedOrders = new ArrayList<>();
+        voucherMap.forEach((voucherId, orders) -> {
+            int count = orders.size();
+            Long token = fencingTokens.get(voucherId);
+            //库存不足时按到达顺序写入库存能满足的部分，只有剩下的订单失败
+            int filled = count;
+            while (filled > 0 && !deductStock(voucherId, filled, token)) {
+                //区分写锁失效和库存不足：已有更新的token写入过，说明写锁已被接管
+                SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+                if (seckillVoucher == null) {
+                    filled = 0;
+                    break;
+                }
+                if (seckillVoucher.getFencingToken() != null && seckillVoucher.getFencingToken() >= token) {
+                    throw new FencingTokenException(LOCK_ORDER_KEY + voucherId, seckillVoucher.getFencingToken());
+                }
+                filled = Math.min(filled - 1, Math.max(seckillVoucher.getStock(), 0));
+            }
+            if (filled < count) {
+                log.error("优惠券{}库存不足，{}个订单未写入", voucherId, count - filled);
+                failedOrders.addAll(orders.subList(filled, count));
+            }
+            saveOrders.addAll(orders.subList(0, filled));
+        });
 
+        //3. 批量创建订单
+        if (!saveOrders.isEmpty()) {
+            getBaseMapper().insertBatch(saveOrders);
+        }
+        return failedOrders;
     }
 
     /**
-     * 封装用户下单时的操作
+     * 带fencing token扣减库存
      *
      * @param voucherId
+     * @param count
+     * @param token
+     * @return 库存不足或token已过期时返回false
+     */
+    private boolean deductStock(Long voucherId, int count, Long token) {
+        return seckillVoucherService.update()
+                .setSql("stock = stock - " + count + ", fencing_token = " + token)
+                .eq("voucher_id", voucherId).ge("stock", count).lt("fencing_token", token)
+                .update();
+    }
+
+    /**
+     * 查询订单状态，优先查缓存，缓存没有再查数据库
+     *
+     * @param orderId
      * @return
      */
-    public Result createVoucherOrder(Long voucherId) {
+    @Override
+    public Result queryOrderStatus(Long orderId) {
         Long userId = UserHolder.getUser().getId();
-
-        //根据优惠券和用于id查询订单
-        int count = this.query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        if (count > 0) {
-            //如果用户已经下过单
-            return Result.fail("同一用户只能下一单！");
+        //1. 查缓存
+        OrderStatusDTO orderStatus = orderStatusCache.get(orderId);
+        if (orderStatus == null) {
+            //2. 缓存没有，查数据库
+            VoucherOrder voucherOrder = this.getById(orderId);
+            if (voucherOrder == null) {
+                return Result.fail("订单不存在！");
+            }
+            orderStatusCache.markPersisted(Collections.singletonList(voucherOrder));
+            orderStatus = orderStatusCache.get(orderId);
+        }
+        //3. 只能查询自己的订单
+        if (!userId.equals(orderStatus.getUserId())) {
+            return Result.fail("订单不存在！");
         }
+        return Result.ok(orderStatus);
+    }
 
-        //6. 是，扣减库存
-//        seckillVoucher.setStock(seckillVoucher.getStock() - 1);
-//        seckillVoucherService.updateById(seckillVoucher);
-        //采用乐观锁，解决超卖问题
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1")
-                .eq("voucher_id", voucherId).gt("stock", 0)
-                .update();
-        if (!success) {
-            return Result.fail("库存不足!");
+    /**
+     * 查询当前用户在某个优惠券下的订单状态
+     *
+     * @param voucherId
+     * @return
+     */
+    @Override
+    public Result queryOrderStatusByVoucher(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        //1. 查缓存
+        Long orderId = orderStatusCache.getOrderId(voucherId, userId);
+        if (orderId != null) {
+            return queryOrderStatus(orderId);
         }
-        //7. 创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        //7.1 订单id
-        long orderId = redisWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        //7.2 用户id
-        voucherOrder.setUserId(userId);
-        //7.3 优惠券id
-        voucherOrder.setVoucherId(voucherId);
-        this.save(voucherOrder);
-        //8. 返回订单id
-        return Result.ok(orderId);
+        //2. 缓存没有，查数据库
+        VoucherOrder voucherOrder = this.query().eq("user_id", userId).eq("voucher_id", voucherId).one();
+        if (voucherOrder == null) {
+            return Result.fail("订单不存在！");
+        }
+        orderStatusCache.markPersisted(Collections.singletonList(voucherOrder));
+        return Result.ok(orderStatusCache.get(voucherOrder.getId()));
     }
 }
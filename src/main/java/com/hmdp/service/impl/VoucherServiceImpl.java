@@ -7,8 +7,12 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillStockClient;
+import com.hmdp.utils.SeckillWaitingRoom;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
@@ -27,6 +31,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private SeckillStockClient seckillStockClient;
+
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -46,6 +56,19 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setStock(voucher.getStock());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
+        seckillVoucher.setSegments(voucher.getSegments() == null || voucher.getSegments() < 1 ? 1 : voucher.getSegments());
         seckillVoucherService.save(seckillVoucher);
+
+        // 事务提交后保存库存和秒杀时间到Redis，供秒杀资格判断的Lua脚本使用
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                seckillStockClient.preload(voucher.getId(), voucher.getStock(),
+                        voucher.getBeginTime(), voucher.getEndTime(), voucher.getSegments());
+                if (Boolean.TRUE.equals(voucher.getWaitingRoom())) {
+                    seckillWaitingRoom.open(voucher.getId(), voucher.getEndTime());
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,305 @@
+package com.hmdp.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 紧凑的二进制编码，只用于注册过的实体类，其他类型仍使用Json
+ * 格式：MARKER + Base64( 类型(1字节) [逻辑过期时间] 结构指纹(4字节) 非空字段位图 各非空字段的值 )
+ * 字段按名称排序，整数使用zigzag变长编码，字符串为长度+UTF-8，时间为UTC秒+纳秒；
+ * 结构指纹由字段名和类型计算，实体类字段变化后旧数据按未命中处理
+ * 不以MARKER开头的值按Json解码，兼容已有的缓存
+ */
+public class BinaryCacheCodec implements CacheCodec {
+    public static final String MARKER = "#1";
+
+    private static final byte PLAIN = 0;
+    private static final byte LOGICAL = 1;
+
+    private static final Set<Class<?>> SUPPORTED_TYPES = new HashSet<>(Arrays.asList(
+            Long.class, long.class, Integer.class, int.class, Double.class, double.class,
+            Boolean.class, boolean.class, String.class, LocalDateTime.class
+    ));
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+    private final Map<Class<?>, Schema> schemas = new HashMap<>();
+
+    /**
+     * @param types 使用二进制编码的实体类，字段只能是整数、浮点数、布尔、字符串和LocalDateTime
+     */
+    public BinaryCacheCodec(Class<?>... types) {
+        for (Class<?> type : types) {
+            schemas.put(type, new Schema(type));
+        }
+    }
+
+    @Override
+    public String encode(Object value) {
+        Schema schema = value == null ? null : schemas.get(value.getClass());
+        if (schema == null) {
+            return jsonCodec.encode(value);
+        }
+        Writer writer = new Writer();
+        writer.write(PLAIN);
+        schema.write(writer, value);
+        return writer.toBase64();
+    }
+
+    @Override
+    public <T> T decode(String raw, Class<T> type) {
+        if (!raw.startsWith(MARKER)) {
+            return jsonCodec.decode(raw, type);
+        }
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            return null;
+        }
+        try {
+            Reader reader = new Reader(raw);
+            if (reader.readByte() != PLAIN) {
+                return null;
+            }
+            return type.cast(schema.read(reader));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String encodeLogical(Object value, LocalDateTime expireTime) {
+        Schema schema = value == null ? null : schemas.get(value.getClass());
+        if (schema == null) {
+            return jsonCodec.encodeLogical(value, expireTime);
+        }
+        Writer writer = new Writer();
+        writer.write(LOGICAL);
+        writer.writeTime(expireTime);
+        schema.write(writer, value);
+        return writer.toBase64();
+    }
+
+    @Override
+    public RedisData decodeLogical(String raw, Class<?> type) {
+        if (!raw.startsWith(MARKER)) {
+            return jsonCodec.decodeLogical(raw, type);
+        }
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            return null;
+        }
+        try {
+            Reader reader = new Reader(raw);
+            if (reader.readByte() != LOGICAL) {
+                return null;
+            }
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(reader.readTime());
+            Object data = schema.read(reader);
+            if (data == null) {
+                return null;
+            }
+            redisData.setData(data);
+            return redisData;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 实体类的字段结构
+     */
+    private static class Schema {
+        private final Class<?> type;
+        private final Field[] fields;
+        private final int fingerprint;
+
+        Schema(Class<?> type) {
+            this.type = type;
+            List<Field> list = new ArrayList<>();
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                if (!SUPPORTED_TYPES.contains(field.getType())) {
+                    throw new IllegalArgumentException(type.getSimpleName() + "." + field.getName() + "的类型不支持二进制编码");
+                }
+                field.setAccessible(true);
+                list.add(field);
+            }
+            list.sort(Comparator.comparing(Field::getName));
+            this.fields = list.toArray(new Field[0]);
+            StringBuilder sb = new StringBuilder(type.getName());
+            for (Field field : fields) {
+                sb.append(';').append(field.getName()).append(':').append(field.getType().getName());
+            }
+            this.fingerprint = sb.toString().hashCode();
+        }
+
+        void write(Writer writer, Object obj) {
+            writer.writeInt(fingerprint);
+            Object[] values = new Object[fields.length];
+            byte[] bitmap = new byte[(fields.length + 7) / 8];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = fields[i].get(obj);
+                    if (values[i] != null) {
+                        bitmap[i >> 3] |= 1 << (i & 7);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            writer.write(bitmap, 0, bitmap.length);
+            for (Object value : values) {
+                if (value != null) {
+                    writer.writeValue(value);
+                }
+            }
+        }
+
+        /**
+         * @return 结构指纹不一致时返回null
+         */
+        Object read(Reader reader) {
+            if (reader.readInt() != fingerprint) {
+                return null;
+            }
+            byte[] bitmap = reader.readBytes((fields.length + 7) / 8);
+            try {
+                Object obj = type.getDeclaredConstructor().newInstance();
+                for (int i = 0; i < fields.length; i++) {
+                    if ((bitmap[i >> 3] & (1 << (i & 7))) != 0) {
+                        fields[i].set(obj, reader.readValue(fields[i].getType()));
+                    }
+                }
+                return obj;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Writer extends ByteArrayOutputStream {
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeVarLong(long v) {
+            //zigzag，绝对值小的负数也只占少量字节
+            long n = (v << 1) ^ (v >> 63);
+            while ((n & ~0x7FL) != 0) {
+                write((int) ((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            write((int) n);
+        }
+
+        void writeTime(LocalDateTime time) {
+            writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(time.getNano());
+        }
+
+        void writeValue(Object value) {
+            if (value instanceof Long || value instanceof Integer) {
+                writeVarLong(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                long bits = Double.doubleToLongBits((Double) value);
+                writeInt((int) (bits >>> 32));
+                writeInt((int) bits);
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? 1 : 0);
+            } else if (value instanceof String) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                writeVarLong(bytes.length);
+                write(bytes, 0, bytes.length);
+            } else {
+                writeTime((LocalDateTime) value);
+            }
+        }
+
+        String toBase64() {
+            return MARKER + Base64.getEncoder().encodeToString(toByteArray());
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        Reader(String raw) {
+            this.bytes = Base64.getDecoder().decode(raw.substring(MARKER.length()));
+        }
+
+        byte readByte() {
+            return bytes[pos++];
+        }
+
+        byte[] readBytes(int n) {
+            byte[] result = Arrays.copyOfRange(bytes, pos, pos + n);
+            pos += n;
+            return result;
+        }
+
+        int readInt() {
+            return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+        }
+
+        long readVarLong() {
+            long n = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = readByte();
+                n |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (n >>> 1) ^ -(n & 1);
+        }
+
+        LocalDateTime readTime() {
+            long second = readVarLong();
+            return LocalDateTime.ofEpochSecond(second, (int) readVarLong(), ZoneOffset.UTC);
+        }
+
+        Object readValue(Class<?> type) {
+            if (type == Long.class || type == long.class) {
+                return readVarLong();
+            }
+            if (type == Integer.class || type == int.class) {
+                return (int) readVarLong();
+            }
+            if (type == Double.class || type == double.class) {
+                long high = readInt() & 0xFFFFFFFFL;
+                return Double.longBitsToDouble(high << 32 | (readInt() & 0xFFFFFFFFL));
+            }
+            if (type == Boolean.class || type == boolean.class) {
+                return readByte() != 0;
+            }
+            if (type == String.class) {
+                int length = (int) readVarLong();
+                String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+                return s;
+            }
+            return readTime();
+        }
+    }
+}
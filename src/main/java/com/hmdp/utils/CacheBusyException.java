@@ -0,0 +1,11 @@
+package com.hmdp.utils;
+
+/**
+ * 等待缓存重建超时，数据是否存在未知，调用方应稍后重试，不能当作不存在处理
+ */
+public class CacheBusyException extends RuntimeException {
+
+    public CacheBusyException(String key) {
+        super("等待缓存" + key + "重建超时");
+    }
+}
@@ -1,20 +1,43 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -22,15 +45,76 @@ import static com.hmdp.utils.RedisConstants.*;
 @Slf4j
 /**
  * Redis工具类
+ * 两级缓存：本地缓存（L1）保存解码后的对象，Redis（L2）保存编码后的字符串（见CacheCodec），L1命中时不访问网络也不解码
+ * 通过delete删除缓存时，向CACHE_INVALIDATE_CHANNEL广播key，所有节点清除自己的L1；
+ * L1的有效期较短，广播丢失时也只会在有效期内读到旧数据
+ * 写入Redis的有效期随机延长一部分，同时写入的key不会同时过期；
+ * 读到快过期的key时按XFetch算法以一定概率提前在后台刷新，越接近过期、重建越慢概率越大，热点key基本不会真正过期
  */
-public class CacheClient {
+public class CacheClient implements MessageListener {
+    private static final DefaultRedisScript<Long> REFRESH_SCRIPT;
+
+    static {
+        REFRESH_SCRIPT = new DefaultRedisScript<>();
+        REFRESH_SCRIPT.setLocation(new ClassPathResource("cache-refresh.lua"));
+        REFRESH_SCRIPT.setResultType(Long.class);
+    }
+
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Autowired
+    private RedisLockFactory redisLockFactory;
+
+    @Autowired
+    private CacheCodec cacheCodec;
+
+    @Autowired
+    private CacheRebuildExecutor cacheRebuildExecutor;
 
     /**
-     * 将Bean转Json，存入Redis
+     * 本地缓存最多保存的key数
+     */
+    @Value("${hmdp.cache.local.capacity:10000}")
+    private int localCapacity;
+
+    /**
+     * 本地缓存有效期（毫秒），不超过Redis中的有效期
+     */
+    @Value("${hmdp.cache.local.ttl:60000}")
+    private long localTtl;
+
+    /**
+     * 有效期随机延长的最大比例
+     */
+    @Value("${hmdp.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    /**
+     * 提前刷新的激进程度，0表示关闭
+     */
+    @Value("${hmdp.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    private LRUCache<String, Object> localCache;
+
+    /**
+     * key前缀 -> 查询数据库耗时的滑动平均（毫秒），用于决定提前刷新的时机
+     */
+    private final Map<String, AtomicLong> recomputeMillis = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载的key -> 加载结果，用于合并并发的未命中
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        localCache = CacheUtil.newLRUCache(localCapacity, localTtl);
+    }
+
+    /**
+     * 将Bean编码后存入Redis，有效期随机延长最多ttlJitter比例
      *
      * @param key
      * @param value
@@ -38,7 +122,9 @@ public class CacheClient {
      * @param unit
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        long ttl = jitter(unit.toMillis(time));
+        stringRedisTemplate.opsForValue().set(key, cacheCodec.encode(value), ttl, TimeUnit.MILLISECONDS);
+        putLocal(key, value, ttl);
     }
 
     /**
@@ -55,7 +141,61 @@ public class CacheClient {
         //设置逻辑过期时间（当前时间+设置的过期时间）
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
 
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        stringRedisTemplate.opsForValue().set(key, cacheCodec.encodeLogical(value, redisData.getExpireTime()));
+        putLocal(key, redisData, localTtl);
+    }
+
+    /**
+     * 使用管道批量写入Redis（不写本地缓存），用于预热
+     * 每个key的有效期（逻辑过期时为逻辑过期时间）分别随机延长，同一批写入的key不会同时过期
+     *
+     * @param values        key -> 数据
+     * @param time
+     * @param unit
+     * @param logicalExpire 是否按逻辑过期方式写入
+     */
+    public void setBatch(Map<String, ?> values, Long time, TimeUnit unit, boolean logicalExpire) {
+        if (values.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                LocalDateTime now = LocalDateTime.now();
+                for (Map.Entry<String, ?> entry : values.entrySet()) {
+                    long ttl = jitter(unit.toMillis(time));
+                    if (logicalExpire) {
+                        LocalDateTime expireTime = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(ttl));
+                        ops.opsForValue().set(entry.getKey(), cacheCodec.encodeLogical(entry.getValue(), expireTime));
+                    } else {
+                        ops.opsForValue().set(entry.getKey(), cacheCodec.encode(entry.getValue()), ttl, TimeUnit.MILLISECONDS);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 删除缓存，并通知所有节点清除本地缓存
+     *
+     * @param key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.remove(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 收到其他节点的删除通知，清除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = stringRedisTemplate.getStringSerializer().deserialize(message.getBody());
+        localCache.remove(key);
     }
 
     /**
@@ -67,36 +207,226 @@ public class CacheClient {
     public <R, ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
-        //1. 查看redis是否有数据
-        String json = stringRedisTemplate.opsForValue().get(key);
+        //0. 查本地缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+        //1. 查看redis是否有数据，快过期时按概率提前刷新
+        String json = getAndRefreshEarly(keyPrefix, id, dbFallBack, time, unit);
 
         if (StrUtil.isNotBlank(json)) {
             //2. 有，返回数据
-            //返回前将Json序列化为对象
-            R r = JSONUtil.toBean(json, type);
+            //返回前解码为对象，无法识别的格式按未命中处理
+            R r = cacheCodec.decode(json, type);
+            if (r != null) {
+                putLocal(key, r, unit.toMillis(time));
+                return r;
+            }
+        } else if (json != null) {
+            //判断命中的是否是空值，返回错误信息
+            return null;
+        }
+
+        //3. 没有，查数据库，同一个key并发未命中时只有一个线程查询，其他线程共享结果
+        return singleFlight(key, () -> {
+            R r = loadFromDb(keyPrefix, id, dbFallBack);
+
+            if (r == null) {
+                // 先将不存在id存入Redis空值，防止缓存穿透
+                stringRedisTemplate.opsForValue().set(key, "", time, unit);
+                //5. 没有，返回404
+                return null;
+            }
+            //4. 数据库有数据，存储给Redis，并返回
+            //存储前将对象序列化为Json
+            set(key, r, time, unit);
+
             return r;
+        });
+    }
+
+    /**
+     * 批量查询：一次MGET，未命中的id合并为一次数据库查询，回写使用管道，N个id只需要常数次网络往返
+     *
+     * @param keyPrefix
+     * @param ids
+     * @param type
+     * @param dbBatchFallback 根据一批id查数据库，返回 id -> 数据
+     * @param time
+     * @param unit
+     * @return id -> 数据，按ids的顺序，不存在的id不包含在内
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                         Function<List<ID>, Map<ID, R>> dbBatchFallback, Long time, TimeUnit unit) {
+        List<ID> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<ID, R> found = new HashMap<>(distinctIds.size());
+        //1. 查本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : distinctIds) {
+            R local = getLocal(keyPrefix + id, type);
+            if (local != null) {
+                found.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
         }
 
-        //判断命中的是否是空值
-        if (json != null) {
-            //返回错误信息
-            return null;
+        //2. 一次MGET查Redis
+        List<ID> missIds = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                ID id = remoteIds.get(i);
+                String json = values == null ? null : values.get(i);
+                if (StrUtil.isNotBlank(json)) {
+                    R r = cacheCodec.decode(json, type);
+                    if (r != null) {
+                        found.put(id, r);
+                        putLocal(keys.get(i), r, unit.toMillis(time));
+                        continue;
+                    }
+                } else if (json != null) {
+                    //命中空值，数据不存在
+                    continue;
+                }
+                missIds.add(id);
+            }
         }
 
-        //3. 没有，查数据库
-        R r = dbFallBack.apply(id);
+        //3. 未命中的id一次查数据库，用管道一次回写，不存在的写入空值
+        if (!missIds.isEmpty()) {
+            Map<ID, R> loaded = dbBatchFallback.apply(missIds);
+            Map<ID, Long> ttls = new HashMap<>(loaded.size());
+            for (ID id : loaded.keySet()) {
+                ttls.put(id, jitter(unit.toMillis(time)));
+            }
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (ID id : missIds) {
+                        R r = loaded.get(id);
+                        if (r == null) {
+                            ops.opsForValue().set(keyPrefix + id, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        } else {
+                            ops.opsForValue().set(keyPrefix + id, cacheCodec.encode(r), ttls.get(id), TimeUnit.MILLISECONDS);
+                        }
+                    }
+                    return null;
+                }
+            });
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                if (r != null) {
+                    found.put(id, r);
+                    putLocal(keyPrefix + id, r, ttls.get(id));
+                }
+            }
+        }
+
+        //4. 按传入的顺序返回
+        Map<ID, R> result = new LinkedHashMap<>(found.size());
+        for (ID id : distinctIds) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
 
-        if (r == null) {
-            // 先将不存在id存入Redis空值，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(key, "", time, unit);
-            //5. 没有，返回404
+    /**
+     * 缓存击穿（互斥锁方式）
+     * 未命中时本节点只有一个线程去抢锁，集群中只有获得锁的线程查数据库，其他节点等待锁释放后直接读取重建好的缓存
+     *
+     * @param id
+     * @return
+     */
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //1. 查本地缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+        //2. 查Redis，命中空值直接返回，快过期时按概率提前刷新
+        String json = getAndRefreshEarly(keyPrefix, id, dbFallBack, time, unit);
+        if (StrUtil.isNotBlank(json)) {
+            R r = cacheCodec.decode(json, type);
+            if (r != null) {
+                putLocal(key, r, unit.toMillis(time));
+                return r;
+            }
+        } else if (json != null) {
             return null;
         }
-        //4. 数据库有数据，存储给Redis，并返回
-        //存储前将对象序列化为Json
-        set(key, r, time, unit);
 
-        return r;
+        //3. 同一个key并发未命中时只有一个线程去抢锁重建，其他线程共享结果
+        return singleFlight(key, () -> rebuildWithMutex(keyPrefix, id, type, dbFallBack, time, unit));
+    }
+
+    /**
+     * 获取互斥锁后重建缓存
+     * 等待锁超时时只再读一次Redis，不查数据库，否则锁被长时间占用时所有等待者都会打到数据库
+     *
+     * @param keyPrefix
+     * @param id
+     * @return 数据不存在时返回null
+     * @throws CacheBusyException 等待超时且缓存仍未重建
+     */
+    private <R, ID> R rebuildWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //1. 阻塞获取互斥锁，锁释放时被唤醒，最多等待LOCK_SHOP_WAIT毫秒
+        ILock lock = redisLockFactory.getLock(key);
+        boolean isLock;
+        try {
+            isLock = lock.lock(LOCK_SHOP_TTL, LOCK_SHOP_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (!isLock) {
+            //等待超时，再读一次缓存，命中空值说明不存在，仍没有则让调用方稍后重试
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null && json.isEmpty()) {
+                return null;
+            }
+            R r = json == null ? null : cacheCodec.decode(json, type);
+            if (r == null) {
+                log.warn("等待缓存{}重建超时", key);
+                throw new CacheBusyException(key);
+            }
+            putLocal(key, r, unit.toMillis(time));
+            return r;
+        }
+        try {
+            //2. 获得锁后再查一次缓存，等待期间可能已被其他线程重建
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (StrUtil.isNotBlank(json)) {
+                R r = cacheCodec.decode(json, type);
+                if (r != null) {
+                    putLocal(key, r, unit.toMillis(time));
+                    return r;
+                }
+            } else if (json != null) {
+                return null;
+            }
+            //3. 查数据库，不存在时写入空值，防止缓存穿透
+            R r = loadFromDb(keyPrefix, id, dbFallBack);
+            if (r == null) {
+                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            set(key, r, time, unit);
+            return r;
+        } finally {
+            lock.unLock();
+        }
     }
 
     /**
@@ -109,63 +439,214 @@ public class CacheClient {
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
 
         String key = keyPrefix + id;
+        //先查本地缓存，本地缓存的数据已逻辑过期时丢弃，从Redis读取最新数据
+        RedisData local = getLocal(key, RedisData.class);
+        if (local != null && type.isInstance(local.getData())) {
+            if (local.getExpireTime().isAfter(LocalDateTime.now())) {
+                return type.cast(local.getData());
+            }
+            localCache.remove(key);
+        }
         //从redis查询数据
         String json = stringRedisTemplate.opsForValue().get(key);
-        //是否存在
+        if (json == null) {
+            //从未写入（未预热或已被删除），同步加载一次，之后按逻辑过期方式刷新
+            return singleFlight(key, () -> {
+                R r = loadFromDb(keyPrefix, id, dbFallBack);
+                if (r == null) {
+                    stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return null;
+                }
+                setWithLogicalExpire(key, r, time, unit);
+                return r;
+            });
+        }
+        //命中空值
         if (StrUtil.isBlank(json)) {
             return null;
         }
 
-        //如果存在，将Json->对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        //如果存在，解码为对象（一次解码得到过期时间和数据）
+        RedisData redisData = cacheCodec.decodeLogical(json, type);
+        if (redisData == null) {
+            return null;
+        }
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
 
         //判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
+            //本地缓存保存解码后的对象
+            putLocal(key, redisData, localTtl);
             return r;
         }
 
-        //已过期，需要缓存重建
-        //获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        if (isLock) {
-            //获取锁成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //查询数据库
-                    R r1 = dbFallBack.apply(id);
-                    //逻辑删除方式写入redis
-                    setWithLogicalExpire(key, r, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unLock(lockKey);
+        //已过期，提交到重建线程池（本节点按key去重），在重建线程中获取互斥锁，集群中只有一个节点重建
+        cacheRebuildExecutor.submit(key, () -> {
+            ILock lock = redisLockFactory.getLock(key);
+            if (!lock.tryLock(LOCK_SHOP_TTL)) {
+                //其他节点正在重建
+                return;
+            }
+            try {
+                //获得锁后再查一次，其他节点可能刚重建完
+                String current = stringRedisTemplate.opsForValue().get(key);
+                RedisData latest = StrUtil.isBlank(current) ? null : cacheCodec.decodeLogical(current, type);
+                if (latest != null && latest.getExpireTime().isAfter(LocalDateTime.now())) {
+                    return;
+                }
+                //查询数据库
+                R r1 = loadFromDb(keyPrefix, id, dbFallBack);
+                if (r1 == null) {
+                    //数据已删除，删除缓存
+                    delete(key);
+                    return;
+                }
+                //逻辑过期方式写入redis，写入刚查到的数据
+                setWithLogicalExpire(key, r1, time, unit);
+            } finally {
+                lock.unLock();
+            }
+        });
+
+        return r;
+    }
+
+    /**
+     * 读取Redis中的值，同时读取剩余有效期（管道，一次往返）
+     * 按XFetch算法判断是否提前刷新：剩余有效期 <= 重建耗时 * beta * -ln(random) 时在后台重建，
+     * 越接近过期、重建越慢，提前刷新的概率越大；当前读取仍返回旧值
+     *
+     * @param keyPrefix
+     * @param id
+     * @param dbFallBack
+     * @param time
+     * @param unit
+     * @return Redis中的值，不存在时返回null
+     */
+    private <R, ID> String getAndRefreshEarly(
+            String keyPrefix, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        AtomicLong delta = recomputeMillis.get(keyPrefix);
+        if (earlyRefreshBeta <= 0 || delta == null) {
+            //未开启或还没有重建耗时的样本，只读取值
+            return stringRedisTemplate.opsForValue().get(key);
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.get(rawKey);
+            connection.pTtl(rawKey);
+            return null;
+        });
+        String json = (String) results.get(0);
+        Long pttl = (Long) results.get(1);
+        if (StrUtil.isBlank(json) || pttl == null || pttl < 0) {
+            //不存在、空值或没有有效期的key不提前刷新
+            return json;
+        }
+        double gap = delta.get() * earlyRefreshBeta * -Math.log(ThreadLocalRandom.current().nextDouble(Double.MIN_VALUE, 1.0));
+        if (gap >= pttl) {
+            //同一个key已在刷新时不会重复提交
+            cacheRebuildExecutor.submit(key, () -> {
+                R r = loadFromDb(keyPrefix, id, dbFallBack);
+                if (r == null) {
+                    //数据已不存在，删除并通知所有节点，下次读取时写入空值
+                    delete(key);
+                    return;
+                }
+                //只在key仍是刷新前的值时写入：查询期间数据被修改并删除了缓存时，不能把查到的旧数据写回
+                long ttl = jitter(unit.toMillis(time));
+                Long written = stringRedisTemplate.execute(REFRESH_SCRIPT, Collections.singletonList(key),
+                        json, cacheCodec.encode(r), String.valueOf(ttl));
+                if (written != null && written == 1L) {
+                    putLocal(key, r, ttl);
                 }
             });
         }
+        return json;
+    }
 
+    /**
+     * 查询数据库，并记录该前缀重建耗时的滑动平均
+     *
+     * @param keyPrefix
+     * @param id
+     * @param dbFallBack
+     * @return
+     */
+    private <R, ID> R loadFromDb(String keyPrefix, ID id, Function<ID, R> dbFallBack) {
+        long begin = System.nanoTime();
+        R r = dbFallBack.apply(id);
+        long sample = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin), 1L);
+        //新样本权重1/8
+        recomputeMillis.computeIfAbsent(keyPrefix, k -> new AtomicLong(sample))
+                .updateAndGet(old -> old + (sample - old) / 8);
         return r;
     }
 
     /**
-     * 获取互斥锁（通过Redis的SetNX实现）
+     * 有效期随机延长 [0, ttlJitter) 比例
+     *
+     * @param ttlMillis
+     * @return
+     */
+    private long jitter(long ttlMillis) {
+        if (ttlJitter <= 0) {
+            return ttlMillis;
+        }
+        return ttlMillis + (long) (ttlMillis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 合并同一个key的并发加载：第一个线程执行loader，其他线程等待并共享它的结果（或异常）
      *
+     * @param key
+     * @param loader
      * @return
      */
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.MINUTES);
-        //进行拆箱的时候可能会有空指针异常，所以用工具包判断一下
-        return BooleanUtil.isTrue(flag);
+    @SuppressWarnings("unchecked")
+    <R> R singleFlight(String key, Supplier<R> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            try {
+                return (R) inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            R r = loader.get();
+            future.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    /**
+     * 查询本地缓存
+     *
+     * @param key
+     * @param type
+     * @return 未命中或类型不符时返回null
+     */
+    private <R> R getLocal(String key, Class<R> type) {
+        Object value = localCache.get(key);
+        return type.isInstance(value) ? type.cast(value) : null;
     }
 
     /**
-     * 释放互斥锁
+     * 写入本地缓存，有效期不超过Redis中的有效期
      *
      * @param key
+     * @param value
+     * @param ttlMillis Redis中的有效期（毫秒）
      */
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    private void putLocal(String key, Object value, long ttlMillis) {
+        localCache.put(key, value, Math.min(localTtl, ttlMillis));
     }
 }
@@ -0,0 +1,38 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存值的编码方式，CacheClient写入Redis前编码，读取后解码
+ */
+public interface CacheCodec {
+
+    String encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param raw
+     * @param type
+     * @return 无法识别的格式返回null，按未命中处理
+     */
+    <T> T decode(String raw, Class<T> type);
+
+    /**
+     * 编码逻辑过期的缓存值
+     *
+     * @param value
+     * @param expireTime 逻辑过期时间
+     * @return
+     */
+    String encodeLogical(Object value, LocalDateTime expireTime);
+
+    /**
+     * 解码逻辑过期的缓存值
+     *
+     * @param raw
+     * @param type
+     * @return data已转为type类型；无法识别的格式返回null
+     */
+    RedisData decodeLogical(String raw, Class<?> type);
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@Slf4j
+/**
+ * 缓存重建的后台线程池，用于逻辑过期和提前刷新
+ * 1. 按key去重：同一个key排队或执行期间再次提交直接忽略
+ * 2. 队列有界，队列满时丢弃新提交的任务：调用方此时仍返回旧值，丢弃只会让数据晚一点刷新
+ * 3. 记录队列长度、重建耗时、失败和丢弃次数，见 /metrics/cache
+ */
+public class CacheRebuildExecutor {
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 排队或执行中的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram rebuildTime = new LatencyHistogram();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "cache-rebuild-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存的key，用于去重
+     * @param task 重建任务
+     * @return 已有相同key的任务或队列已满时返回false，任务不会执行
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                long begin = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failures.increment();
+                    log.error("重建缓存{}失败", key, e);
+                } finally {
+                    rebuildTime.record(System.nanoTime() - begin);
+                    pendingKeys.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            shed.increment();
+            log.warn("缓存重建队列已满，丢弃{}", key);
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("queueDepth", executor.getQueue().size());
+        map.put("queueCapacity", queueCapacity);
+        map.put("activeThreads", executor.getActiveCount());
+        map.put("submitted", submitted.sum());
+        map.put("deduplicated", deduplicated.sum());
+        map.put("shed", shed.sum());
+        map.put("failures", failures.sum());
+        map.put("rebuildTime", rebuildTime.snapshot());
+        return map;
+    }
+}
@@ -0,0 +1,31 @@
+package com.hmdp.utils;
+
+/**
+ * 写入被拒绝：数据端已写入过不小于本次fencing token的token
+ * 可能是写锁已被接管，也可能是Redis丢失了token计数器，发放的token落后于数据端
+ */
+public class FencingTokenException extends IllegalStateException {
+    /**
+     * 锁名
+     */
+    private final String name;
+
+    /**
+     * 数据端已写入的token
+     */
+    private final long storedToken;
+
+    public FencingTokenException(String name, long storedToken) {
+        super("锁" + name + "的fencing token已失效，数据端已写入token " + storedToken);
+        this.name = name;
+        this.storedToken = storedToken;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStoredToken() {
+        return storedToken;
+    }
+}
@@ -3,5 +3,34 @@ package com.hmdp.utils;
 public interface ILock {
     boolean tryLock(Long timeSec);
 
+    /**
+     * 阻塞获取锁：锁被占用时等待锁释放的通知后再抢，最多等待waitMillis毫秒
+     *
+     * @param timeSec    锁的有效期
+     * @param waitMillis 最长等待时间
+     * @return 等待超时返回false
+     * @throws InterruptedException
+     */
+    boolean lock(Long timeSec, long waitMillis) throws InterruptedException;
+
+    /**
+     * 获取锁并返回fencing token，同一把锁每次被新持有时发放的token单调递增
+     * 持有者写数据时带上token，数据端拒绝不大于已写入token的写入，锁过期后旧持有者的写入不会生效
+     *
+     * @param timeSec 锁的有效期
+     * @return 获取失败返回null
+     */
+    Long tryLockWithToken(Long timeSec);
+
+    /**
+     * 阻塞获取锁并返回fencing token
+     *
+     * @param timeSec    锁的有效期
+     * @param waitMillis 最长等待时间
+     * @return 等待超时返回null
+     * @throws InterruptedException
+     */
+    Long lockWithToken(Long timeSec, long waitMillis) throws InterruptedException;
+
     void unLock();
 }
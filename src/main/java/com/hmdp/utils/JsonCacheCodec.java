@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.time.LocalDateTime;
+
+/**
+ * Json编码，使用Hutool的JSONUtil
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public String encode(Object value) {
+        return JSONUtil.toJsonStr(value);
+    }
+
+    @Override
+    public <T> T decode(String raw, Class<T> type) {
+        if (raw.startsWith(BinaryCacheCodec.MARKER)) {
+            //二进制格式（切换编码方式后的旧数据），按未命中处理
+            return null;
+        }
+        return JSONUtil.toBean(raw, type);
+    }
+
+    @Override
+    public String encodeLogical(Object value, LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        return JSONUtil.toJsonStr(redisData);
+    }
+
+    @Override
+    public RedisData decodeLogical(String raw, Class<?> type) {
+        if (raw.startsWith(BinaryCacheCodec.MARKER)) {
+            return null;
+        }
+        RedisData redisData = JSONUtil.toBean(raw, RedisData.class);
+        redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        return redisData;
+    }
+}
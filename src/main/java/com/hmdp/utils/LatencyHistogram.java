@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的耗时直方图，无锁记录，用于监控接口
+ */
+public class LatencyHistogram {
+    /**
+     * 各桶的上限（毫秒），超过最后一个上限的计入溢出桶
+     */
+    private static final long[] BOUNDS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS.length && nanos > TimeUnit.MILLISECONDS.toNanos(BOUNDS[i])) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        long n = count.sum();
+        map.put("count", n);
+        map.put("avgMs", n == 0 ? 0.0 : totalNanos.sum() / 1e6 / n);
+        map.put("maxMs", maxNanos.get() / 1e6);
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS.length; i++) {
+            histogram.put("<=" + BOUNDS[i] + "ms", buckets[i].sum());
+        }
+        histogram.put(">" + BOUNDS[BOUNDS.length - 1] + "ms", buckets[BOUNDS.length].sum());
+        map.put("histogram", histogram);
+        return map;
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+/**
+ * 分布式锁的争用统计：获取次数、失败次数、等待耗时和持有耗时的直方图，以及争用最多的key
+ * 锁名里通常带有业务id，按key的统计只保留最近活跃的一部分
+ */
+public class LockMetrics {
+    private static final int TOP_KEYS = 10;
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+
+    private final LRUCache<String, KeyStats> keyStats = CacheUtil.newLRUCache(1000);
+
+    /**
+     * 记录一次获取锁
+     *
+     * @param name      锁名
+     * @param success   是否获取成功
+     * @param waitNanos 获取锁的耗时
+     */
+    public void recordAcquire(String name, boolean success, long waitNanos) {
+        attempts.increment();
+        waitTime.record(waitNanos);
+        KeyStats stats = keyStats.get(name, () -> new KeyStats(name));
+        stats.attempts.increment();
+        stats.waitNanos.add(waitNanos);
+        if (!success) {
+            failures.increment();
+            stats.failures.increment();
+        }
+    }
+
+    /**
+     * 记录一次持有锁的时长
+     *
+     * @param holdNanos
+     */
+    public void recordHold(long holdNanos) {
+        holdTime.record(holdNanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("attempts", attempts.sum());
+        map.put("failures", failures.sum());
+        map.put("waitTime", waitTime.snapshot());
+        map.put("holdTime", holdTime.snapshot());
+        //按失败次数、总等待时间排序，取争用最多的key
+        List<Map<String, Object>> topKeys = new ArrayList<>();
+        for (KeyStats stats : keyStats) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", stats.name);
+            item.put("attempts", stats.attempts.sum());
+            item.put("failures", stats.failures.sum());
+            item.put("waitMs", TimeUnit.NANOSECONDS.toMillis(stats.waitNanos.sum()));
+            topKeys.add(item);
+        }
+        topKeys.sort(Comparator.<Map<String, Object>>comparingLong(item -> (Long) item.get("failures"))
+                .thenComparingLong(item -> (Long) item.get("waitMs"))
+                .reversed());
+        map.put("topContendedKeys", topKeys.size() > TOP_KEYS ? topKeys.subList(0, TOP_KEYS) : topKeys);
+        return map;
+    }
+
+    private static class KeyStats {
+        private final String name;
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        KeyStats(String name) {
+            this.name = name;
+        }
+    }
+}
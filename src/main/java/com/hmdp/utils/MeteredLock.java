@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+/**
+ * 带争用统计的锁，包装任意ILock实现，记录获取耗时、失败次数和持有时长
+ */
+public class MeteredLock implements ILock {
+    private final String name;
+    private final ILock delegate;
+    private final LockMetrics lockMetrics;
+
+    /**
+     * 当前持有的重入次数和开始持有的时间，同一个锁对象只在一个线程里使用
+     */
+    private int holds;
+    private long holdStart;
+
+    public MeteredLock(String name, ILock delegate, LockMetrics lockMetrics) {
+        this.name = name;
+        this.delegate = delegate;
+        this.lockMetrics = lockMetrics;
+    }
+
+    @Override
+    public boolean tryLock(Long timeSec) {
+        long begin = System.nanoTime();
+        boolean success = delegate.tryLock(timeSec);
+        acquired(begin, success);
+        return success;
+    }
+
+    @Override
+    public boolean lock(Long timeSec, long waitMillis) throws InterruptedException {
+        long begin = System.nanoTime();
+        boolean success = false;
+        try {
+            success = delegate.lock(timeSec, waitMillis);
+            return success;
+        } finally {
+            acquired(begin, success);
+        }
+    }
+
+    @Override
+    public Long tryLockWithToken(Long timeSec) {
+        long begin = System.nanoTime();
+        Long token = delegate.tryLockWithToken(timeSec);
+        acquired(begin, token != null);
+        return token;
+    }
+
+    @Override
+    public Long lockWithToken(Long timeSec, long waitMillis) throws InterruptedException {
+        long begin = System.nanoTime();
+        Long token = null;
+        try {
+            token = delegate.lockWithToken(timeSec, waitMillis);
+            return token;
+        } finally {
+            acquired(begin, token != null);
+        }
+    }
+
+    @Override
+    public void unLock() {
+        delegate.unLock();
+        if (holds > 0 && --holds == 0) {
+            lockMetrics.recordHold(System.nanoTime() - holdStart);
+        }
+    }
+
+    private void acquired(long begin, boolean success) {
+        long now = System.nanoTime();
+        lockMetrics.recordAcquire(name, success, now - begin);
+        if (success && holds++ == 0) {
+            holdStart = now;
+        }
+    }
+}
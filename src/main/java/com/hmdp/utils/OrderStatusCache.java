@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.OrderStatusDTO;
+import com.hmdp.entity.VoucherOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Component
+/**
+ * 异步下单的订单状态缓存
+ * 订单状态保存在Redis的hash中（order:status:{orderId}），另外记录用户在每个优惠券下的订单id，
+ * 已写入数据库或失败的订单状态不会再变化，同时缓存在本地，下单结束后的大量轮询不再访问Redis和数据库
+ */
+public class OrderStatusCache {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private static final DefaultRedisScript<Long> QUEUED_SCRIPT;
+
+    static {
+        QUEUED_SCRIPT = new DefaultRedisScript<>();
+        QUEUED_SCRIPT.setLocation(new ClassPathResource("order-queued.lua"));
+        QUEUED_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 最终状态（已写入、失败）的本地缓存
+     */
+    private final LRUCache<Long, OrderStatusDTO> localCache =
+            CacheUtil.newLRUCache(10000, TimeUnit.MINUTES.toMillis(ORDER_STATUS_TTL));
+
+    /**
+     * 记录订单进入消息队列
+     * 订单发送到队列后消费者可能先写入数据库，脚本中判断，已是最终状态时不覆盖
+     *
+     * @param voucherOrder
+     */
+    public void markQueued(VoucherOrder voucherOrder) {
+        stringRedisTemplate.execute(
+                QUEUED_SCRIPT,
+                Arrays.asList(ORDER_STATUS_KEY + voucherOrder.getId(),
+                        ORDER_STATUS_USER_KEY + voucherOrder.getVoucherId() + ":" + voucherOrder.getUserId()),
+                voucherOrder.getId().toString(), voucherOrder.getVoucherId().toString(),
+                voucherOrder.getUserId().toString(), String.valueOf(TimeUnit.MINUTES.toSeconds(ORDER_STATUS_TTL))
+        );
+    }
+
+    /**
+     * 批量记录订单已写入数据库
+     *
+     * @param voucherOrders
+     */
+    public void markPersisted(Collection<VoucherOrder> voucherOrders) {
+        save(voucherOrders.toArray(new VoucherOrder[0]), OrderStatusDTO.PERSISTED);
+    }
+
+    /**
+     * 批量记录订单写入失败
+     *
+     * @param voucherOrders
+     */
+    public void markFailed(Collection<VoucherOrder> voucherOrders) {
+        save(voucherOrders.toArray(new VoucherOrder[0]), OrderStatusDTO.FAILED);
+    }
+
+    /**
+     * 根据订单id查询状态
+     *
+     * @param orderId
+     * @return 缓存中没有时返回null
+     */
+    public OrderStatusDTO get(Long orderId) {
+        OrderStatusDTO orderStatus = localCache.get(orderId);
+        if (orderStatus != null) {
+            return orderStatus;
+        }
+        Map<Object, Object> map = stringRedisTemplate.opsForHash().entries(ORDER_STATUS_KEY + orderId);
+        if (map.isEmpty()) {
+            return null;
+        }
+        orderStatus = BeanUtil.fillBeanWithMap(map, new OrderStatusDTO(), false);
+        if (!OrderStatusDTO.QUEUED.equals(orderStatus.getStatus())) {
+            localCache.put(orderId, orderStatus);
+        }
+        return orderStatus;
+    }
+
+    /**
+     * 根据优惠券和用户查询订单id
+     *
+     * @param voucherId
+     * @param userId
+     * @return 缓存中没有时返回null
+     */
+    public Long getOrderId(Long voucherId, Long userId) {
+        String orderId = stringRedisTemplate.opsForValue().get(ORDER_STATUS_USER_KEY + voucherId + ":" + userId);
+        return orderId == null ? null : Long.valueOf(orderId);
+    }
+
+    /**
+     * 使用管道一次写入一批订单的最终状态
+     *
+     * @param voucherOrders
+     * @param status
+     */
+    private void save(VoucherOrder[] voucherOrders, String status) {
+        if (voucherOrders.length == 0) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (VoucherOrder voucherOrder : voucherOrders) {
+                    String key = ORDER_STATUS_KEY + voucherOrder.getId();
+                    Map<String, String> map = new HashMap<>(8);
+                    map.put("orderId", voucherOrder.getId().toString());
+                    map.put("voucherId", voucherOrder.getVoucherId().toString());
+                    map.put("userId", voucherOrder.getUserId().toString());
+                    map.put("status", status);
+                    ops.opsForHash().putAll(key, map);
+                    ops.expire(key, ORDER_STATUS_TTL, TimeUnit.MINUTES);
+                    ops.opsForValue().set(ORDER_STATUS_USER_KEY + voucherOrder.getVoucherId() + ":" + voucherOrder.getUserId(),
+                            voucherOrder.getId().toString(), ORDER_STATUS_TTL, TimeUnit.MINUTES);
+                }
+                return null;
+            }
+        });
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            OrderStatusDTO orderStatus = new OrderStatusDTO();
+            orderStatus.setOrderId(voucherOrder.getId());
+            orderStatus.setVoucherId(voucherOrder.getVoucherId());
+            orderStatus.setUserId(voucherOrder.getUserId());
+            orderStatus.setStatus(status);
+            localCache.put(voucherOrder.getId(), orderStatus);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器，位图保存在Redis中，本地保存一份镜像
+ * 判断只查本地镜像；添加时同时写本地和Redis，其他节点的镜像由调用方负责同步
+ * 本地位的编号与Redis位图一致（第0位是第一个字节的最高位），Redis位图按位或合并到本地镜像，镜像中的位只增不减
+ * 位图的第numBits位是完整标记，只有全量构建后才会设置；位图被淘汰后单独的add会生成不带标记的残缺位图，加载时不予信任
+ * 每次写入正式位图时递增版本号，重新加载时版本号未变化则不读取整个位图
+ */
+public class RedisBloomFilter {
+    private final String key;
+    private final String versionKey;
+    private final long numBits;
+    private final int numHashes;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private volatile AtomicLongArray localBits;
+
+    /**
+     * 上一次加载到本地镜像的位图版本号
+     */
+    private volatile String loadedVersion;
+
+    /**
+     * @param keyPrefix          Redis位图key的前缀，实际key带上位数和哈希函数个数，参数变化后不会读到旧位图
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望的误判率
+     */
+    public RedisBloomFilter(String keyPrefix, long expectedInsertions, double fpp, StringRedisTemplate stringRedisTemplate) {
+        this.numBits = Math.max((long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))), 64L);
+        this.numHashes = Math.max((int) Math.round((double) numBits / expectedInsertions * Math.log(2)), 1);
+        //hash tag保证构建用的临时位图和正式位图在同一个slot
+        this.key = keyPrefix + "{" + numBits + ":" + numHashes + "}";
+        this.versionKey = key + ":version";
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localBits = new AtomicLongArray((int) ((numBits + 63) / 64));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 判断元素是否可能存在，只查本地镜像
+     *
+     * @param value
+     * @return 返回false时一定不存在
+     */
+    public boolean mightContain(Object value) {
+        AtomicLongArray bits = localBits;
+        for (long offset : offsets(value)) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加元素到本地镜像和Redis
+     *
+     * @param value
+     */
+    public void add(Object value) {
+        addLocal(value);
+        addAll(key, Collections.singletonList(value));
+    }
+
+    /**
+     * 只添加到本地镜像，用于接收其他节点的添加通知
+     *
+     * @param value
+     */
+    public void addLocal(Object value) {
+        AtomicLongArray bits = localBits;
+        for (long offset : offsets(value)) {
+            int i = (int) (offset >>> 6);
+            long mask = 1L << (offset & 63);
+            long old;
+            do {
+                old = bits.get(i);
+            } while ((old & mask) == 0 && !bits.compareAndSet(i, old, old | mask));
+        }
+    }
+
+    /**
+     * 使用管道把一批元素写入指定的位图
+     *
+     * @param bitmapKey
+     * @param values
+     */
+    public void addAll(String bitmapKey, Collection<?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        byte[] rawKey = bitmapKey.getBytes(StandardCharsets.UTF_8);
+        boolean live = key.equals(bitmapKey);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Object value : values) {
+                for (long offset : offsets(value)) {
+                    connection.setBit(rawKey, offset, true);
+                }
+            }
+            if (live) {
+                connection.incr(versionKey.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 把Redis中的位图按位或合并到本地镜像，版本号与上一次加载时相同则跳过
+     *
+     * @return Redis中没有位图或位图没有完整标记时返回false，本地镜像不变
+     */
+    public boolean loadFromRedis() {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        //1. 先用一次往返检查位图是否存在、版本号是否变化
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.exists(rawKey);
+            connection.get(versionKey.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        if (!Boolean.TRUE.equals(results.get(0))) {
+            return false;
+        }
+        String version = (String) results.get(1);
+        if (version == null) {
+            //没有版本号的旧位图，补上初始版本号
+            stringRedisTemplate.opsForValue().setIfAbsent(versionKey, "0");
+        } else if (version.equals(loadedVersion)) {
+            return true;
+        }
+        //2. 版本号变化，读取整个位图
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (bytes == null || !isComplete(bytes)) {
+            return false;
+        }
+        AtomicLongArray bits = localBits;
+        for (int i = 0; i < bytes.length && i < (numBits + 7) / 8; i++) {
+            int b = bytes[i] & 0xFF;
+            for (int t = 0; t < 8; t++) {
+                long offset = (long) i * 8 + t;
+                if ((b & (0x80 >>> t)) != 0 && offset < numBits) {
+                    int j = (int) (offset >>> 6);
+                    bits.accumulateAndGet(j, 1L << (offset & 63), (x, y) -> x | y);
+                }
+            }
+        }
+        //版本号在读取位图之前获取，期间的写入会在下一次加载时读到
+        loadedVersion = version;
+        return true;
+    }
+
+    /**
+     * 把全量构建好的临时位图按位或合并到正式位图，设置完整标记后删除临时位图
+     * 合并而不是替换，构建期间其他节点写入正式位图的元素不会丢失
+     *
+     * @param tempKey 临时位图的key，需带上与正式位图相同的hash tag
+     */
+    public void mergeFrom(String tempKey) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawTempKey = tempKey.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, rawTempKey);
+            connection.setBit(rawKey, numBits, true);
+            connection.del(rawTempKey);
+            connection.incr(versionKey.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+    }
+
+    /**
+     * 位图是否带有完整标记（第numBits位）
+     *
+     * @param bytes
+     * @return
+     */
+    private boolean isComplete(byte[] bytes) {
+        int i = (int) (numBits >>> 3);
+        return i < bytes.length && (bytes[i] & (0x80 >>> (int) (numBits & 7))) != 0;
+    }
+
+    /**
+     * 元素对应的各个位，使用64位MurmurHash拆成两个32位哈希做双重哈希
+     *
+     * @param value
+     * @return
+     */
+    long[] offsets(Object value) {
+        long hash = MurmurHash.hash64(value.toString().getBytes(StandardCharsets.UTF_8));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long[] offsets = new long[numHashes];
+        for (int i = 1; i <= numHashes; i++) {
+            long combined = h1 + (long) i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            offsets[i - 1] = combined % numBits;
+        }
+        return offsets;
+    }
+}
@@ -10,14 +10,52 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_WARMUP_SHOP_KEY = "cache:warmup:shop";
+    public static final Long LOCK_WARMUP_TTL = 10L;
+    public static final String BLOOM_SHOP_KEY = "bloom:shop:";
+    public static final String BLOOM_SHOP_ADD_CHANNEL = "bloom:shop:add";
+    public static final String LOCK_BLOOM_SHOP_KEY = "bloom:shop:rebuild";
+    public static final Long LOCK_BLOOM_SHOP_TTL = 30L;
+    public static final Long LOCK_BLOOM_SHOP_WAIT = 120000L;
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
 
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type";
 
-    public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final Long LOCK_SHOP_WAIT = 500L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:release";
+    public static final String LOCK_TOKEN_KEY = "lock:token:";
+    public static final String LOCK_ORDER_KEY = "order:voucher:";
+    public static final Long LOCK_ORDER_TTL = 5L;
+    public static final Long LOCK_ORDER_WAIT = 3000L;
+    public static final String LOCK_RECONCILE_KEY = "seckill:reconcile";
+    public static final Long LOCK_RECONCILE_TTL = 30L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SEGMENT_KEY = "seckill:segment:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    public static final String SECKILL_VOUCHER_VERSION_KEY = "seckill:voucher:version";
+    public static final String SECKILL_LIMIT_KEY = "limit:seckill:";
+    public static final String SECKILL_ROOM_KEY = "seckill:room";
+    public static final String SECKILL_ROOM_QUEUE_KEY = "seckill:room:queue:";
+    public static final String SECKILL_ROOM_PASS_KEY = "seckill:room:pass:";
+    public static final String SECKILL_ROOM_TICK_KEY = "seckill:room:tick:";
+
+    public static final String ORDER_STATUS_KEY = "order:status:";
+    public static final String ORDER_STATUS_USER_KEY = "order:status:user:";
+    public static final Long ORDER_STATUS_TTL = 30L;
+
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final Long ID_WORKER_TTL = 30L;
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DEAD_LETTER_KEY = "stream.orders.dead";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -0,0 +1,175 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.hmdp.utils.RedisConstants.LOCK_TOKEN_KEY;
+
+@Component
+/**
+ * 分布式锁工厂，同时负责唤醒等待锁的线程
+ * 锁释放时解锁脚本向LOCK_RELEASE_CHANNEL发布锁的key，本节点上等待该锁的线程立即被唤醒重新抢锁，不再轮询Redis
+ * 返回的锁前面都有一层按key的本地锁（见TwoTierLock），同一节点上同一个key只有一个线程访问Redis，
+ * 本地锁按引用计数管理，没有线程等待或持有时从map中移除，
+ * 最外层记录争用统计（见LockMetrics）
+ */
+public class RedisLockFactory implements MessageListener {
+    private static final DefaultRedisScript<Long> RAISE_TOKEN_SCRIPT;
+
+    static {
+        RAISE_TOKEN_SCRIPT = new DefaultRedisScript<>();
+        RAISE_TOKEN_SCRIPT.setLocation(new ClassPathResource("fencing-raise.lua"));
+        RAISE_TOKEN_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    /**
+     * 锁的key -> 等待该锁释放的线程共用的门闩，锁释放后移除，下一轮等待重新创建
+     */
+    private final Map<String, CountDownLatch> releaseLatches = new ConcurrentHashMap<>();
+
+    /**
+     * 锁名 -> 本地锁，只保存有线程等待或持有的锁
+     */
+    private final Map<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取可重入锁
+     *
+     * @param name
+     * @return
+     */
+    public ILock getLock(String name) {
+        return new MeteredLock(name,
+                new TwoTierLock(name, this, new ReentrantRedisLock(name, stringRedisTemplate, this)), lockMetrics);
+    }
+
+    /**
+     * 获取不可重入的简单锁
+     *
+     * @param name
+     * @return
+     */
+    public ILock getSimpleLock(String name) {
+        return new MeteredLock(name,
+                new TwoTierLock(name, this, new SimpleRedisLock(name, stringRedisTemplate, this)), lockMetrics);
+    }
+
+    /**
+     * 把锁的fencing token计数器提高到不小于数据端已写入的token
+     * Redis丢失计数器（被清空、切换到落后的从节点）后，重新发放的token会小于数据端已写入的token，所有写入都会被拒绝，
+     * 写入被拒绝时调用，之后重新获取锁得到的token大于数据端的token
+     *
+     * @param name
+     * @param storedToken 数据端已写入的token
+     * @return 计数器确实落后并被提高时返回true
+     */
+    public boolean raiseFencingToken(String name, long storedToken) {
+        Long raised = stringRedisTemplate.execute(RAISE_TOKEN_SCRIPT,
+                Collections.singletonList(LOCK_TOKEN_KEY + name), String.valueOf(storedToken));
+        return raised != null && raised == 1L;
+    }
+
+    /**
+     * 获取锁名对应的本地锁并增加引用计数，每次调用都要对应一次releaseLocalLock
+     *
+     * @param name
+     * @return
+     */
+    ReentrantLock retainLocalLock(String name) {
+        return localLocks.compute(name, (k, lock) -> {
+            if (lock == null) {
+                lock = new LocalLock();
+            }
+            lock.refs++;
+            return lock;
+        });
+    }
+
+    /**
+     * 减少本地锁的引用计数，减到0时移除
+     *
+     * @param name
+     */
+    void releaseLocalLock(String name) {
+        localLocks.computeIfPresent(name, (k, lock) -> --lock.refs == 0 ? null : lock);
+    }
+
+    /**
+     * 当前线程持有的本地锁
+     *
+     * @param name
+     * @return 当前线程未持有时返回null
+     */
+    ReentrantLock heldLocalLock(String name) {
+        LocalLock lock = localLocks.get(name);
+        return lock != null && lock.isHeldByCurrentThread() ? lock : null;
+    }
+
+    /**
+     * 收到锁释放通知，唤醒等待者
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String lockKey = stringRedisTemplate.getStringSerializer().deserialize(message.getBody());
+        CountDownLatch latch = releaseLatches.remove(lockKey);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * 获取锁的释放门闩，必须在抢锁之前获取，否则抢锁失败到开始等待之间的释放通知会丢失
+     *
+     * @param lockKey
+     * @return
+     */
+    CountDownLatch releaseLatch(String lockKey) {
+        return releaseLatches.computeIfAbsent(lockKey, k -> new CountDownLatch(1));
+    }
+
+    /**
+     * 等待锁释放，最多等待到锁过期或截止时间
+     *
+     * @param latch    抢锁前获取的门闩
+     * @param ttl      锁的剩余有效期（毫秒）
+     * @param deadline 截止时间（毫秒时间戳）
+     * @return 已到截止时间返回false
+     * @throws InterruptedException
+     */
+    static boolean awaitRelease(CountDownLatch latch, long ttl, long deadline) throws InterruptedException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        latch.await(Math.min(Math.max(ttl, 1L), remaining), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 带引用计数的本地锁
+     */
+    private static class LocalLock extends ReentrantLock {
+        /**
+         * 等待和持有该锁的次数（重入也计数），只在map的compute中修改
+         */
+        private int refs;
+    }
+}
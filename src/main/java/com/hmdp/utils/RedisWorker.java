@@ -2,25 +2,81 @@ package com.hmdp.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 @Slf4j
 /**
  * 全局id生成器，用于生成订单id
+ * redis模式：每个id执行一次INCR
+ * segment模式：每个节点用一次INCRBY租借一段序列号，在本地无锁分配，用到一定比例时后台预取下一段
+ * snowflake模式：低32位改为 10位机器id + 22位序列号，机器id从Redis租借，生成id不访问Redis，见SnowflakeIdWorker
  */
 public class RedisWorker {
     private static final long BEGIN_TIMESTAMP = 1640995200L;
     private static final int COUNT_BITS = 32;
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private static final ExecutorService ID_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 序列号分配方式：redis、segment、snowflake
+     */
+    @Value("${hmdp.id.mode:redis}")
+    private String mode;
+
+    /**
+     * segment模式每次租借的序列号个数
+     */
+    @Value("${hmdp.id.segment-size:1000}")
+    private int segmentSize;
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private SnowflakeIdWorker snowflakeIdWorker;
+
+    @PostConstruct
+    private void init() {
+        if ("snowflake".equals(mode)) {
+            snowflakeIdWorker = new SnowflakeIdWorker(stringRedisTemplate,
+                    () -> LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP);
+            snowflakeIdWorker.heartbeat();
+        }
+    }
+
+    /**
+     * snowflake模式下定时续期机器id
+     */
+    @Scheduled(fixedDelay = 10000L)
+    public void heartbeat() {
+        if (snowflakeIdWorker == null) {
+            return;
+        }
+        try {
+            snowflakeIdWorker.heartbeat();
+        } catch (Exception e) {
+            log.error("机器id续期失败", e);
+        }
+    }
+
     public long nextId(String keyPrefix) {
         //1. 生成时间戳
         LocalDateTime now = LocalDateTime.now();
@@ -28,13 +84,151 @@ public class RedisWorker {
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
 
+        //snowflake模式，本地生成，时间戳由SnowflakeIdWorker自己读取
+        if (snowflakeIdWorker != null) {
+            return snowflakeIdWorker.nextId();
+        }
+
         //2.生成序列号
-        //2.1 获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //2.2 自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count;
+        if ("segment".equals(mode)) {
+            count = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).nextCount(nowSecond / SECONDS_PER_DAY);
+        } else {
+            //2.1 获取当前日期，精确到天
+            String date = now.format(DATE_FORMATTER);
+            //2.2 自增长
+            count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        }
 
         //3. 拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 解析id中的生成时间，各模式通用
+     *
+     * @param id
+     * @return
+     */
+    public static LocalDateTime decodeTime(long id) {
+        return LocalDateTime.ofEpochSecond((id >>> COUNT_BITS) + BEGIN_TIMESTAMP, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * 解析id中的序列号（redis、segment模式）
+     *
+     * @param id
+     * @return
+     */
+    public static long decodeCount(long id) {
+        return id & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 解析id中的机器id（snowflake模式）
+     *
+     * @param id
+     * @return
+     */
+    public static long decodeWorkerId(long id) {
+        return (id >>> SnowflakeIdWorker.SEQUENCE_BITS) & SnowflakeIdWorker.MAX_WORKER_ID;
+    }
+
+    /**
+     * 解析id中的序列号（snowflake模式）
+     *
+     * @param id
+     * @return
+     */
+    public static long decodeSequence(long id) {
+        return id & SnowflakeIdWorker.MAX_SEQUENCE;
+    }
+
+    /**
+     * 从Redis租借到的一段序列号 [cursor, max]
+     */
+    private static class Segment {
+        private final long day;
+        private final AtomicLong cursor;
+        private final long max;
+        /**
+         * 剩余序列号等于该值时开始预取下一段
+         */
+        private final long prefetchAt;
+
+        Segment(long day, long min, long max) {
+            this.day = day;
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+            this.prefetchAt = (max - min + 1) / 5;
+        }
+    }
+
+    /**
+     * 一个业务前缀的双缓冲：当前段和预取的下一段
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        long nextCount(long day) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.day == day) {
+                    long count = segment.cursor.getAndIncrement();
+                    if (count <= segment.max) {
+                        if (segment.max - count == segment.prefetchAt) {
+                            prefetch(day);
+                        }
+                        return count;
+                    }
+                }
+                switchSegment(day);
+            }
+        }
+
+        /**
+         * 当前段用完或日期变化，切换到预取的下一段，没有则同步租借
+         */
+        private synchronized void switchSegment(long day) {
+            Segment segment = current;
+            if (segment != null && segment.day == day && segment.cursor.get() <= segment.max) {
+                //其他线程已经切换过
+                return;
+            }
+            Segment prefetched = next;
+            next = null;
+            current = prefetched != null && prefetched.day == day ? prefetched : lease(day);
+        }
+
+        private void prefetch(long day) {
+            if (next != null || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            ID_PREFETCH_EXECUTOR.submit(() -> {
+                try {
+                    next = lease(day);
+                } catch (Exception e) {
+                    log.error("预取id号段失败，keyPrefix={}", keyPrefix, e);
+                } finally {
+                    loading.set(false);
+                }
+            });
+        }
+
+        private Segment lease(long day) {
+            String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+            Long max = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, segmentSize);
+            if (max == null) {
+                throw new IllegalStateException("租借id号段失败");
+            }
+            return new Segment(day, max - segmentSize + 1, max);
+        }
+    }
 }
@@ -0,0 +1,221 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_TOKEN_KEY;
+
+/**
+ * 可重入的分布式锁
+ * 1. 锁用hash保存持有者和重入次数，同一线程可以重复加锁
+ * 2. 看门狗：持有锁期间每隔有效期的1/3自动续期，线程卡顿（如GC）也不会导致锁提前过期，解锁后停止续期
+ * 3. 锁释放时发布通知，lock阻塞等待的线程被唤醒后立即重新抢锁
+ * 4. 需要时发放fencing token，同一次持有期间（包括重入）token不变
+ */
+@Slf4j
+public class ReentrantRedisLock implements ILock {
+    private static final String KEY_PREFIX = "lock:";
+    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("reentrant-lock.lua"));
+        LOCK_SCRIPT.setResultType(List.class);
+
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("reentrant-unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("reentrant-renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final ScheduledExecutorService WATCHDOG_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 正在续期的锁：锁的key + 持有者标识 -> 续期任务
+     */
+    private static final Map<String, ScheduledFuture<?>> RENEWALS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final StringRedisTemplate stringRedisTemplate;
+    /**
+     * 用于等待锁释放通知，为空时lock只能等到锁过期
+     */
+    private final RedisLockFactory lockFactory;
+
+    public ReentrantRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
+        this(name, stringRedisTemplate, null);
+    }
+
+    public ReentrantRedisLock(String name, StringRedisTemplate stringRedisTemplate, RedisLockFactory lockFactory) {
+        this.name = name;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.lockFactory = lockFactory;
+    }
+
+    /**
+     * 获取分布式锁，获取成功后由看门狗自动续期，直到解锁
+     *
+     * @param timeSec 锁的有效期，看门狗每隔有效期的1/3续期一次
+     * @return
+     */
+    @Override
+    public boolean tryLock(Long timeSec) {
+        return tryAcquire(timeSec, false)[0] > 0;
+    }
+
+    /**
+     * 阻塞获取分布式锁，锁释放时被通知唤醒，最多等待waitMillis毫秒
+     *
+     * @param timeSec
+     * @param waitMillis
+     * @return
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean lock(Long timeSec, long waitMillis) throws InterruptedException {
+        return acquire(timeSec, waitMillis, false) != null;
+    }
+
+    @Override
+    public Long tryLockWithToken(Long timeSec) {
+        long[] result = tryAcquire(timeSec, true);
+        return result[0] > 0 ? result[1] : null;
+    }
+
+    @Override
+    public Long lockWithToken(Long timeSec, long waitMillis) throws InterruptedException {
+        return acquire(timeSec, waitMillis, true);
+    }
+
+    /**
+     * 阻塞抢锁
+     *
+     * @param timeSec
+     * @param waitMillis
+     * @param withToken  是否发放fencing token
+     * @return 成功返回fencing token（不发放时为0），超时返回null
+     * @throws InterruptedException
+     */
+    private Long acquire(Long timeSec, long waitMillis, boolean withToken) throws InterruptedException {
+        String key = KEY_PREFIX + name;
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            //先拿门闩再抢锁，避免错过释放通知
+            CountDownLatch latch = lockFactory == null ? new CountDownLatch(1) : lockFactory.releaseLatch(key);
+            long[] result = tryAcquire(timeSec, withToken);
+            if (result[0] > 0) {
+                return result[1];
+            }
+            //等待锁释放，最多等到锁过期
+            if (!RedisLockFactory.awaitRelease(latch, result[1], deadline)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 抢锁
+     *
+     * @param timeSec
+     * @param withToken 是否发放fencing token
+     * @return {重入次数, fencing token}，失败时为 {0, 锁的剩余有效期（毫秒）}
+     */
+    private long[] tryAcquire(Long timeSec, boolean withToken) {
+        long leaseMillis = TimeUnit.SECONDS.toMillis(timeSec);
+        String ownerId = ownerId();
+        List<String> keys = withToken
+                ? Arrays.asList(KEY_PREFIX + name, LOCK_TOKEN_KEY + name)
+                : Collections.singletonList(KEY_PREFIX + name);
+        List<?> result = stringRedisTemplate.execute(LOCK_SCRIPT, keys, ownerId, String.valueOf(leaseMillis));
+        if (result == null || result.size() < 2) {
+            return new long[]{0L, 0L};
+        }
+        long count = ((Number) result.get(0)).longValue();
+        if (count == 1) {
+            //第一次加锁，开启看门狗
+            startWatchdog(ownerId, leaseMillis);
+        }
+        return new long[]{count, ((Number) result.get(1)).longValue()};
+    }
+
+    /**
+     * 解锁，重入次数减到0时释放锁并停止续期
+     */
+    @Override
+    public void unLock() {
+        String ownerId = ownerId();
+        Long result = stringRedisTemplate.execute(
+                UNLOCK_SCRIPT,
+                Collections.singletonList(KEY_PREFIX + name),
+                ownerId, LOCK_RELEASE_CHANNEL
+        );
+        if (result == null || result != 0) {
+            //锁已释放或已不属于当前线程
+            stopWatchdog(ownerId);
+        }
+    }
+
+    /**
+     * 开启看门狗，每隔有效期的1/3续期一次
+     *
+     * @param ownerId
+     * @param leaseMillis 锁的有效期（毫秒）
+     */
+    private void startWatchdog(String ownerId, long leaseMillis) {
+        String key = KEY_PREFIX + name;
+        long period = Math.max(leaseMillis / 3, 1L);
+        ScheduledFuture<?> future = WATCHDOG_EXECUTOR.scheduleAtFixedRate(() -> {
+            try {
+                Long renewed = stringRedisTemplate.execute(
+                        RENEW_SCRIPT, Collections.singletonList(key), ownerId, String.valueOf(leaseMillis));
+                if (renewed == null || renewed == 0) {
+                    stopWatchdog(ownerId);
+                }
+            } catch (Exception e) {
+                log.error("锁{}续期失败", key, e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> old = RENEWALS.put(key + ":" + ownerId, future);
+        if (old != null) {
+            old.cancel(false);
+        }
+    }
+
+    private void stopWatchdog(String ownerId) {
+        ScheduledFuture<?> future = RENEWALS.remove(KEY_PREFIX + name + ":" + ownerId);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private String ownerId() {
+        return ID_PREFIX + Thread.currentThread().getId();
+    }
+}
@@ -0,0 +1,407 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Component
+@Slf4j
+/**
+ * 秒杀库存工具类，负责Redis中秒杀库存的写入和购买资格判断
+ * 库存可以拆分为多个分段（分段key带相同的hash tag，集群下同一分段的库存和订单key落在同一个slot），
+ * 用户按id取模落到自己的分段，分段库存不足时再去其他分段扣减
+ * 优惠券抢完后在本地记录售罄标记，并通过Redis发布订阅通知其他节点，之后的请求不再访问Redis；
+ * 重新预热或补充库存后同样广播，所有节点清除售罄标记
+ */
+public class SeckillStockClient implements MessageListener {
+
+    /**
+     * 购买资格判断结果
+     */
+    public static final int OK = 0;
+    public static final int NO_STOCK = 1;
+    public static final int REPEAT = 2;
+    public static final int NOT_BEGIN = 3;
+    public static final int ENDED = 4;
+    public static final int NOT_FOUND = 5;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SEGMENT_SCRIPT;
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+
+        SEGMENT_SCRIPT = new DefaultRedisScript<>();
+        SEGMENT_SCRIPT.setLocation(new ClassPathResource("seckill-segment.lua"));
+        SEGMENT_SCRIPT.setResultType(Long.class);
+
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("seckill-take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 优惠券的库存分段数，创建后不会改变，缓存在本地
+     */
+    private final Map<Long, Integer> segmentCache = new ConcurrentHashMap<>();
+
+    /**
+     * 已售罄的优惠券
+     */
+    private final Set<Long> soldOut = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 将秒杀库存和时间写入Redis
+     *
+     * @param voucherId
+     * @param stock
+     * @param beginTime
+     * @param endTime
+     * @param segments  库存分段数，小于等于1时不分段
+     */
+    public void preload(Long voucherId, int stock, LocalDateTime beginTime, LocalDateTime endTime, Integer segments) {
+        int k = segments == null || segments < 1 ? 1 : Math.min(segments, Math.max(stock, 1));
+        String begin = String.valueOf(beginTime.toEpochSecond(ZoneOffset.UTC));
+        String end = String.valueOf(endTime.toEpochSecond(ZoneOffset.UTC));
+        if (k == 1) {
+            stringRedisTemplate.opsForHash().putAll(stockKey(voucherId), stockMap(stock, begin, end));
+        } else {
+            //库存平均分配到各分段，余数分给前面的分段
+            for (int i = 0; i < k; i++) {
+                int segmentStock = stock / k + (i < stock % k ? 1 : 0);
+                stringRedisTemplate.opsForHash().putAll(segmentStockKey(voucherId, i), stockMap(segmentStock, begin, end));
+            }
+        }
+        stringRedisTemplate.opsForValue().set(SECKILL_SEGMENT_KEY + voucherId, String.valueOf(k));
+        segmentCache.put(voucherId, k);
+        clearSoldOut(voucherId);
+    }
+
+    /**
+     * 优惠券是否已售罄，只查询本地标记
+     *
+     * @param voucherId
+     * @return
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.contains(voucherId);
+    }
+
+    /**
+     * 接收其他节点发布的售罄、补充库存消息
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = stringRedisTemplate.getStringSerializer().deserialize(message.getChannel());
+        String voucherId = stringRedisTemplate.getStringSerializer().deserialize(message.getBody());
+        if (SECKILL_RESTOCK_CHANNEL.equals(channel)) {
+            soldOut.remove(Long.valueOf(voucherId));
+        } else {
+            soldOut.add(Long.valueOf(voucherId));
+        }
+    }
+
+    /**
+     * 记录售罄标记并通知其他节点
+     *
+     * @param voucherId
+     */
+    private void markSoldOut(Long voucherId) {
+        if (soldOut.add(voucherId)) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 清除售罄标记并通知其他节点
+     *
+     * @param voucherId
+     */
+    private void clearSoldOut(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 判断购买资格，有资格则扣减库存、记录下单用户，并发送订单消息
+     *
+     * @param voucherId
+     * @param userId
+     * @param orderId
+     * @return 判断结果，见本类常量
+     */
+    public int admit(Long voucherId, Long userId, long orderId) {
+        if (isSoldOut(voucherId)) {
+            return NO_STOCK;
+        }
+        Integer k = segments(voucherId);
+        if (k == null) {
+            return NOT_FOUND;
+        }
+        long now = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+
+        //1. 不分段，一个Lua脚本完成判断、扣减和发送订单消息
+        if (k == 1) {
+            Long result = stringRedisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    Arrays.asList(stockKey(voucherId), SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM_KEY),
+                    userId.toString(), String.valueOf(now), String.valueOf(orderId), voucherId.toString()
+            );
+            int r = result == null ? NOT_FOUND : result.intValue();
+            if (r == NO_STOCK) {
+                markSoldOut(voucherId);
+            }
+            return r;
+        }
+
+        //2. 分段，先在用户所属分段判断资格
+        int home = (int) Math.floorMod(userId, (long) k);
+        Long result = stringRedisTemplate.execute(
+                SEGMENT_SCRIPT,
+                Arrays.asList(segmentStockKey(voucherId, home), segmentOrderKey(voucherId, home)),
+                userId.toString(), String.valueOf(now)
+        );
+        int r = result == null ? NOT_FOUND : result.intValue();
+        if (r == NO_STOCK) {
+            //3. 所属分段库存不足，依次到其他分段扣减
+            r = takeFromSiblings(voucherId, k, home);
+            if (r != OK) {
+                //所有分段都没有库存，释放预占的一人一单记录
+                stringRedisTemplate.opsForSet().remove(segmentOrderKey(voucherId, home), userId.toString());
+                markSoldOut(voucherId);
+            }
+        }
+        if (r != OK) {
+            return r;
+        }
+
+        //4. 发送订单消息，消息队列和分段key不在同一个slot，无法放进同一个脚本，发送失败时归还库存和一人一单记录
+        Map<String, String> order = new HashMap<>(4);
+        order.put("id", String.valueOf(orderId));
+        order.put("userId", userId.toString());
+        order.put("voucherId", voucherId.toString());
+        try {
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM_KEY, order);
+        } catch (RuntimeException e) {
+            giveBack(voucherId, userId, home);
+            throw e;
+        }
+        return OK;
+    }
+
+    /**
+     * 订单消息发送失败，归还扣减的库存（归还到用户所属分段）并删除一人一单记录，用户可以重新抢购
+     *
+     * @param voucherId
+     * @param userId
+     * @param home      用户所属分段
+     */
+    private void giveBack(Long voucherId, Long userId, int home) {
+        try {
+            stringRedisTemplate.opsForHash().increment(segmentStockKey(voucherId, home), "stock", 1);
+            stringRedisTemplate.opsForSet().remove(segmentOrderKey(voucherId, home), userId.toString());
+            clearSoldOut(voucherId);
+        } catch (RuntimeException e) {
+            log.error("归还秒杀券{}用户{}的库存失败，需等待库存核对修复", voucherId, userId, e);
+        }
+    }
+
+    /**
+     * 恢复已下单用户记录，用于Redis数据丢失后重新预热
+     *
+     * @param voucherId
+     * @param userIds
+     */
+    public void loadBuyers(Long voucherId, Collection<Long> userIds) {
+        Integer k = segments(voucherId);
+        if (k == null || userIds.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> buyerMap = new HashMap<>();
+        for (Long userId : userIds) {
+            buyerMap.computeIfAbsent(orderKey(voucherId, userId, k), key -> new ArrayList<>()).add(userId.toString());
+        }
+        buyerMap.forEach((orderKey, buyers) ->
+                stringRedisTemplate.opsForSet().add(orderKey, buyers.toArray(new String[0])));
+    }
+
+    /**
+     * 删除失败订单的已下单用户记录，用户可以重新抢购
+     * 订单因数据库库存不足失败时Redis中多扣的库存不再归还，否则会再次放进数据库无法满足的订单
+     *
+     * @param voucherOrders
+     */
+    public void releaseBuyers(Collection<VoucherOrder> voucherOrders) {
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            Integer k = segments(voucherOrder.getVoucherId());
+            if (k == null) {
+                continue;
+            }
+            stringRedisTemplate.opsForSet().remove(orderKey(voucherOrder.getVoucherId(), voucherOrder.getUserId(), k),
+                    voucherOrder.getUserId().toString());
+        }
+    }
+
+    /**
+     * 查询Redis中的剩余库存（各分段之和）
+     *
+     * @param voucherId
+     * @return 剩余库存，秒杀信息未写入Redis时返回null
+     */
+    public Integer queryStock(Long voucherId) {
+        Integer k = segments(voucherId);
+        if (k == null) {
+            return null;
+        }
+        int stock = 0;
+        for (int i = 0; i < k; i++) {
+            Object value = stringRedisTemplate.opsForHash().get(k == 1 ? stockKey(voucherId) : segmentStockKey(voucherId, i), "stock");
+            if (value == null) {
+                return null;
+            }
+            stock += Integer.parseInt(value.toString());
+        }
+        return stock;
+    }
+
+    /**
+     * 查询Redis中记录的已下单用户数（各分段之和）
+     *
+     * @param voucherId
+     * @return
+     */
+    public long queryBuyerCount(Long voucherId) {
+        Integer k = segments(voucherId);
+        if (k == null) {
+            return 0L;
+        }
+        long count = 0L;
+        for (int i = 0; i < k; i++) {
+            Long size = stringRedisTemplate.opsForSet().size(k == 1 ? SECKILL_ORDER_KEY + voucherId : segmentOrderKey(voucherId, i));
+            count += size == null ? 0L : size;
+        }
+        return count;
+    }
+
+    /**
+     * 修正Redis中的剩余库存
+     *
+     * @param voucherId
+     * @param delta     增加的库存，为负数时从各分段依次扣减
+     */
+    public void adjustStock(Long voucherId, int delta) {
+        Integer k = segments(voucherId);
+        if (k == null || delta == 0) {
+            return;
+        }
+        if (k == 1 || delta > 0) {
+            stringRedisTemplate.opsForHash().increment(k == 1 ? stockKey(voucherId) : segmentStockKey(voucherId, 0), "stock", delta);
+        } else {
+            int remaining = -delta;
+            for (int i = 0; i < k && remaining > 0; i++) {
+                Object value = stringRedisTemplate.opsForHash().get(segmentStockKey(voucherId, i), "stock");
+                int take = Math.min(remaining, value == null ? 0 : Math.max(Integer.parseInt(value.toString()), 0));
+                if (take > 0) {
+                    stringRedisTemplate.opsForHash().increment(segmentStockKey(voucherId, i), "stock", -take);
+                    remaining -= take;
+                }
+            }
+        }
+        if (delta > 0) {
+            clearSoldOut(voucherId);
+        }
+    }
+
+    private int takeFromSiblings(Long voucherId, int k, int home) {
+        for (int i = 1; i < k; i++) {
+            int segment = (home + i) % k;
+            Long result = stringRedisTemplate.execute(
+                    TAKE_SCRIPT, Collections.singletonList(segmentStockKey(voucherId, segment)));
+            if (result != null && result == OK) {
+                return OK;
+            }
+        }
+        return NO_STOCK;
+    }
+
+    /**
+     * 获取优惠券的库存分段数
+     *
+     * @param voucherId
+     * @return 分段数，秒杀信息未写入Redis时返回null
+     */
+    public Integer segments(Long voucherId) {
+        Integer k = segmentCache.get(voucherId);
+        if (k != null) {
+            return k;
+        }
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SEGMENT_KEY + voucherId);
+        if (value == null) {
+            return null;
+        }
+        k = Integer.valueOf(value);
+        segmentCache.put(voucherId, k);
+        return k;
+    }
+
+    private Map<String, String> stockMap(int stock, String begin, String end) {
+        Map<String, String> stockMap = new HashMap<>(4);
+        stockMap.put("stock", String.valueOf(stock));
+        stockMap.put("begin", begin);
+        stockMap.put("end", end);
+        return stockMap;
+    }
+
+    private String stockKey(Long voucherId) {
+        return SECKILL_STOCK_KEY + voucherId;
+    }
+
+    private String segmentStockKey(Long voucherId, int segment) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    /**
+     * 用户所属的已下单用户key
+     *
+     * @param voucherId
+     * @param userId
+     * @param k         分段数
+     * @return
+     */
+    private String orderKey(Long voucherId, Long userId, int k) {
+        return k == 1 ? SECKILL_ORDER_KEY + voucherId : segmentOrderKey(voucherId, (int) Math.floorMod(userId, (long) k));
+    }
+
+    private String segmentOrderKey(Long voucherId, int segment) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+}
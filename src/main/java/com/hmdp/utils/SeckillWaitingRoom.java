@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.SeckillQueueDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Component
+@Slf4j
+/**
+ * 秒杀等候室：用户先进入Redis排队队列（zset），每秒放行固定人数，拿到通行证的用户才能进入下单流程
+ * 不管来多少人，到达下单流程的请求数都是平稳的，客户端只需要按建议的间隔查询排队状态
+ */
+public class SeckillWaitingRoom {
+
+    private static final DefaultRedisScript<Long> PASS_SCRIPT;
+    private static final DefaultRedisScript<Long> QUEUE_SCRIPT;
+
+    static {
+        PASS_SCRIPT = new DefaultRedisScript<>();
+        PASS_SCRIPT.setLocation(new ClassPathResource("room-pass.lua"));
+        PASS_SCRIPT.setResultType(Long.class);
+
+        QUEUE_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SCRIPT.setLocation(new ClassPathResource("room-queue.lua"));
+        QUEUE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每秒放行人数
+     */
+    @Value("${hmdp.seckill.room.pass-per-second:200}")
+    private int passPerSecond;
+
+    /**
+     * 通行证有效期（毫秒）
+     */
+    @Value("${hmdp.seckill.room.pass-ttl:60000}")
+    private long passTtl;
+
+    /**
+     * 开启了等候室的优惠券，每秒从Redis同步一次
+     */
+    private final Set<Long> openRooms = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 为优惠券开启等候室，秒杀结束后自动关闭
+     *
+     * @param voucherId
+     * @param endTime
+     */
+    public void open(Long voucherId, LocalDateTime endTime) {
+        long end = endTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        stringRedisTemplate.opsForHash().put(SECKILL_ROOM_KEY, voucherId.toString(), String.valueOf(end));
+        openRooms.add(voucherId);
+    }
+
+    /**
+     * 优惠券是否开启了等候室，只查询本地
+     *
+     * @param voucherId
+     * @return
+     */
+    public boolean isOpen(Long voucherId) {
+        return openRooms.contains(voucherId);
+    }
+
+    /**
+     * 进入排队，重复排队不会改变位置
+     *
+     * @param voucherId
+     * @param userId
+     * @return
+     */
+    public SeckillQueueDTO enqueue(Long voucherId, Long userId) {
+        //ZADD NX，并发的重复排队也只保留第一次进入的时间
+        stringRedisTemplate.execute(QUEUE_SCRIPT, Collections.singletonList(SECKILL_ROOM_QUEUE_KEY + voucherId),
+                userId.toString(), String.valueOf(System.currentTimeMillis()));
+        return status(voucherId, userId);
+    }
+
+    /**
+     * 查询排队状态
+     *
+     * @param voucherId
+     * @param userId
+     * @return
+     */
+    public SeckillQueueDTO status(Long voucherId, Long userId) {
+        SeckillQueueDTO queue = new SeckillQueueDTO();
+        queue.setTicket(voucherId + ":" + userId);
+        //1. 已拿到通行证
+        Double expire = stringRedisTemplate.opsForZSet().score(SECKILL_ROOM_PASS_KEY + voucherId, userId.toString());
+        if (expire != null && expire >= System.currentTimeMillis()) {
+            queue.setStatus(SeckillQueueDTO.PASSED);
+            queue.setPosition(0L);
+            return queue;
+        }
+        //2. 排队中，按放行速度估算下次查询时间
+        Long rank = stringRedisTemplate.opsForZSet().rank(SECKILL_ROOM_QUEUE_KEY + voucherId, userId.toString());
+        if (rank != null) {
+            queue.setStatus(SeckillQueueDTO.WAITING);
+            queue.setPosition(rank);
+            queue.setRetryAfter(Math.max(rank / Math.max(passPerSecond, 1), 1L) * 1000L);
+            return queue;
+        }
+        //3. 未排队
+        queue.setStatus(SeckillQueueDTO.NONE);
+        return queue;
+    }
+
+    /**
+     * 是否持有有效的通行证，只检查不使用
+     *
+     * @param voucherId
+     * @param userId
+     * @return
+     */
+    public boolean hasPass(Long voucherId, Long userId) {
+        Double expire = stringRedisTemplate.opsForZSet().score(SECKILL_ROOM_PASS_KEY + voucherId, userId.toString());
+        return expire != null && expire >= System.currentTimeMillis();
+    }
+
+    /**
+     * 使用通行证，在抢到名额之后调用，抢购失败时通行证保留到过期，用户可以重试
+     * 同一用户并发使用同一张通行证时，一人一单由Redis中的下单判断保证
+     *
+     * @param voucherId
+     * @param userId
+     */
+    public void usePass(Long voucherId, Long userId) {
+        stringRedisTemplate.opsForZSet().remove(SECKILL_ROOM_PASS_KEY + voucherId, userId.toString());
+    }
+
+    /**
+     * 每秒放行一批用户，集群中每秒只有一个节点真正执行放行
+     */
+    @Scheduled(fixedRate = 1000L)
+    public void pass() {
+        Map<Object, Object> rooms = stringRedisTemplate.opsForHash().entries(SECKILL_ROOM_KEY);
+        long now = System.currentTimeMillis();
+        openRooms.retainAll(rooms.keySet().stream().map(id -> Long.valueOf(id.toString())).collect(Collectors.toSet()));
+        for (Map.Entry<Object, Object> room : rooms.entrySet()) {
+            Long voucherId = Long.valueOf(room.getKey().toString());
+            //1. 秒杀已结束，关闭等候室
+            if (Long.parseLong(room.getValue().toString()) < now) {
+                close(voucherId);
+                continue;
+            }
+            openRooms.add(voucherId);
+            //2. 放行
+            try {
+                stringRedisTemplate.execute(
+                        PASS_SCRIPT,
+                        Arrays.asList(SECKILL_ROOM_QUEUE_KEY + voucherId, SECKILL_ROOM_PASS_KEY + voucherId, SECKILL_ROOM_TICK_KEY + voucherId),
+                        String.valueOf(passPerSecond), String.valueOf(now), String.valueOf(passTtl)
+                );
+            } catch (Exception e) {
+                log.error("等候室{}放行异常", voucherId, e);
+            }
+        }
+    }
+
+    private void close(Long voucherId) {
+        openRooms.remove(voucherId);
+        stringRedisTemplate.opsForHash().delete(SECKILL_ROOM_KEY, voucherId.toString());
+        stringRedisTemplate.delete(Arrays.asList(SECKILL_ROOM_QUEUE_KEY + voucherId, SECKILL_ROOM_PASS_KEY + voucherId));
+    }
+}
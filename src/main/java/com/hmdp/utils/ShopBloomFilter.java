@@ -0,0 +1,191 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOOM_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOOM_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOOM_SHOP_WAIT;
+
+@Component
+@Slf4j
+/**
+ * 商铺id的布隆过滤器，防止缓存穿透：不存在的id在访问缓存和数据库之前就被拒绝，也不会在Redis中留下空值key
+ * 启动时Redis中没有完整的位图则从tb_shop分页读取id构建；新增商铺时写入位图并广播给其他节点，
+ * 每分钟从Redis重新加载一次（按位或合并到）本地镜像，弥补丢失的广播，位图版本号未变化时不读取位图
+ * 构建在分布式锁中进行，位图丢失时只有一个节点查询数据库，其他节点等构建完成后加载
+ */
+public class ShopBloomFilter implements MessageListener {
+    private static final int PAGE_SIZE = 1000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ShopMapper shopMapper;
+
+    @Autowired
+    private RedisLockFactory redisLockFactory;
+
+    /**
+     * 预计商铺数
+     */
+    @Value("${hmdp.cache.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    /**
+     * 期望的误判率
+     */
+    @Value("${hmdp.cache.bloom.fpp:0.01}")
+    private double fpp;
+
+    private RedisBloomFilter bloomFilter;
+
+    @PostConstruct
+    private void init() {
+        bloomFilter = new RedisBloomFilter(BLOOM_SHOP_KEY, expectedInsertions, fpp, stringRedisTemplate);
+        if (bloomFilter.loadFromRedis()) {
+            return;
+        }
+        //本地镜像为空时所有商铺都会被判断为不存在，启动时等待其他节点构建完成
+        ILock lock = redisLockFactory.getLock(LOCK_BLOOM_SHOP_KEY);
+        boolean isLock;
+        try {
+            isLock = lock.lock(LOCK_BLOOM_SHOP_TTL, LOCK_BLOOM_SHOP_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        if (!isLock) {
+            //等待超时，只构建本地镜像，由持有锁的节点写入Redis
+            log.warn("等待其他节点构建商铺布隆过滤器超时，只构建本地镜像");
+            loadLocal();
+            return;
+        }
+        try {
+            if (!bloomFilter.loadFromRedis()) {
+                rebuild();
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 商铺是否可能存在
+     *
+     * @param id
+     * @return 返回false时一定不存在
+     */
+    public boolean mightContain(Long id) {
+        return bloomFilter.mightContain(id);
+    }
+
+    /**
+     * 新增商铺后写入过滤器，并通知其他节点
+     *
+     * @param id
+     */
+    public void add(Long id) {
+        bloomFilter.add(id);
+        stringRedisTemplate.convertAndSend(BLOOM_SHOP_ADD_CHANNEL, id.toString());
+    }
+
+    /**
+     * 收到其他节点新增商铺的通知，写入本地镜像
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String id = stringRedisTemplate.getStringSerializer().deserialize(message.getBody());
+        bloomFilter.addLocal(Long.valueOf(id));
+    }
+
+    /**
+     * 定期从Redis重新加载本地镜像
+     */
+    @Scheduled(initialDelay = 60000L, fixedDelay = 60000L)
+    public void reload() {
+        try {
+            if (bloomFilter.loadFromRedis()) {
+                return;
+            }
+            //其他节点正在构建时跳过，下次加载时读取它构建的位图
+            ILock lock = redisLockFactory.getLock(LOCK_BLOOM_SHOP_KEY);
+            if (!lock.tryLock(LOCK_BLOOM_SHOP_TTL)) {
+                return;
+            }
+            try {
+                if (!bloomFilter.loadFromRedis()) {
+                    rebuild();
+                }
+            } finally {
+                lock.unLock();
+            }
+        } catch (Exception e) {
+            log.error("加载商铺布隆过滤器失败", e);
+        }
+    }
+
+    /**
+     * 从数据库分页读取所有商铺id写入临时位图，完成后合并到正式位图并设置完整标记，其他节点不会信任构建了一半的位图
+     */
+    public void rebuild() {
+        String tempKey = bloomFilter.getKey() + ":building:" + UUID.randomUUID().toString(true);
+        long count = scan(tempKey);
+        bloomFilter.mergeFrom(tempKey);
+        log.info("商铺布隆过滤器构建完成，共{}个商铺", count);
+    }
+
+    /**
+     * 从数据库读取所有商铺id，只写入本地镜像
+     */
+    private void loadLocal() {
+        long count = scan(null);
+        log.info("商铺布隆过滤器本地镜像构建完成，共{}个商铺", count);
+    }
+
+    /**
+     * 从数据库分页读取所有商铺id写入本地镜像
+     *
+     * @param tempKey 同时写入的临时位图，为null时只写本地
+     * @return 商铺数
+     */
+    private long scan(String tempKey) {
+        long lastId = 0L;
+        long count = 0L;
+        while (true) {
+            List<Object> ids = shopMapper.selectObjs(new QueryWrapper<Shop>()
+                    .select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE));
+            if (ids.isEmpty()) {
+                break;
+            }
+            if (tempKey != null) {
+                bloomFilter.addAll(tempKey, ids);
+            }
+            for (Object id : ids) {
+                bloomFilter.addLocal(id);
+            }
+            count += ids.size();
+            lastId = ((Number) ids.get(ids.size() - 1)).longValue();
+            if (ids.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,199 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Component
+@Slf4j
+/**
+ * 商铺缓存预热，避免冷启动后大量请求同时未命中
+ * 1. 启动完成后在后台执行，最近一次预热仍在有效期内时跳过；也可以定时执行或通过管理接口触发（有最小间隔）
+ * 2. 按id分页读取tb_shop，每页用一次管道写入Redis，写入格式与商铺缓存策略一致（互斥锁或逻辑过期）
+ * 3. 用令牌桶限制每秒读取的页数，不会压垮MySQL和Redis
+ * 4. 集群中同一时间只有一个节点预热
+ */
+public class ShopCacheWarmer {
+    private static final ExecutorService WARMUP_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cache-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ShopMapper shopMapper;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private RedisLockFactory redisLockFactory;
+
+    @Value("${hmdp.cache.shop-strategy:mutex}")
+    private String shopStrategy;
+
+    @Value("${hmdp.cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每页读取的商铺数
+     */
+    @Value("${hmdp.cache.warmup.page-size:500}")
+    private int pageSize;
+
+    /**
+     * 每秒最多读取的页数
+     */
+    @Value("${hmdp.cache.warmup.pages-per-second:5}")
+    private double pagesPerSecond;
+
+    /**
+     * 通过管理接口触发预热的最小间隔（毫秒）
+     */
+    @Value("${hmdp.cache.warmup.cooldown:600000}")
+    private long cooldown;
+
+    /**
+     * 上一次通过管理接口触发预热的时间
+     */
+    private final AtomicLong lastTriggered = new AtomicLong();
+
+    /**
+     * 本节点是否正在预热
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 启动完成后预热
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            submit(false);
+        }
+    }
+
+    /**
+     * 定时预热，默认关闭
+     */
+    @Scheduled(cron = "${hmdp.cache.warmup.cron:-}")
+    public void scheduledWarmUp() {
+        submit(true);
+    }
+
+    /**
+     * 通过管理接口触发预热，忽略最近一次预热的记录，两次触发至少间隔cooldown毫秒
+     *
+     * @return 未到间隔或本节点已在预热时返回false
+     */
+    public boolean trigger() {
+        long now = System.currentTimeMillis();
+        long last = lastTriggered.get();
+        if (now - last < cooldown || !lastTriggered.compareAndSet(last, now)) {
+            return false;
+        }
+        return submit(true);
+    }
+
+    /**
+     * 在后台执行预热
+     *
+     * @param force 为false时，最近一次预热仍在有效期内则跳过
+     * @return 本节点已在预热时返回false
+     */
+    public boolean submit(boolean force) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        WARMUP_EXECUTOR.submit(() -> {
+            try {
+                warmUp(force);
+            } catch (Exception e) {
+                log.error("商铺缓存预热失败", e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void warmUp(boolean force) {
+        if (!force && Boolean.TRUE.equals(stringRedisTemplate.hasKey(CACHE_WARMUP_SHOP_KEY))) {
+            log.info("商铺缓存最近已预热，跳过");
+            return;
+        }
+        //1. 获取锁，其他节点正在预热时跳过，持有期间由看门狗续期
+        ILock lock = redisLockFactory.getLock(CACHE_WARMUP_SHOP_KEY);
+        if (!lock.tryLock(LOCK_WARMUP_TTL)) {
+            log.info("其他节点正在预热商铺缓存，跳过");
+            return;
+        }
+        try {
+            boolean logicalExpire = "logical".equals(shopStrategy);
+            TokenBucket bucket = new TokenBucket(pagesPerSecond, 1D);
+            long begin = System.currentTimeMillis();
+            long lastId = 0L;
+            long count = 0L;
+            while (true) {
+                //2. 限速，每页一个令牌
+                acquire(bucket);
+                //3. 按id分页读取
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId).orderByAsc("id").last("limit " + pageSize));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                //4. 一次管道写入一页
+                Map<String, Shop> values = new LinkedHashMap<>(shops.size() * 2);
+                for (Shop shop : shops) {
+                    values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+                }
+                cacheClient.setBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES, logicalExpire);
+                count += shops.size();
+                lastId = shops.get(shops.size() - 1).getId();
+                if (shops.size() < pageSize) {
+                    break;
+                }
+            }
+            //5. 记录预热时间，有效期内重启不再重复预热
+            stringRedisTemplate.opsForValue().set(CACHE_WARMUP_SHOP_KEY,
+                    String.valueOf(System.currentTimeMillis()), CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            log.info("商铺缓存预热完成，共{}个商铺，耗时{}ms", count, System.currentTimeMillis() - begin);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private static void acquire(TokenBucket bucket) {
+        while (!bucket.tryAcquire()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.max(bucket.nanosToNextPermit(), 1L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("商铺缓存预热被中断", e);
+            }
+        }
+    }
+}
@@ -5,15 +5,25 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_TOKEN_KEY;
+
 public class SimpleRedisLock implements ILock {
     private static final String KEY_PREFIX = "lock:";
     private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";   //true删除uuid的下划线
     private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> TOKEN_LOCK_SCRIPT;
 
     static {
+        TOKEN_LOCK_SCRIPT = new DefaultRedisScript<>();
+        TOKEN_LOCK_SCRIPT.setLocation(new ClassPathResource("lock-token.lua"));
+        TOKEN_LOCK_SCRIPT.setResultType(Long.class);
+
         UNLOCK_SCRIPT = new DefaultRedisScript<>();
         UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
         UNLOCK_SCRIPT.setResultType(Long.class);
@@ -21,6 +31,10 @@ public class SimpleRedisLock implements ILock {
 
     private String name;
     private StringRedisTemplate stringRedisTemplate;
+    /**
+     * 用于等待锁释放通知，为空时lock只能等到锁过期
+     */
+    private RedisLockFactory lockFactory;
 
 
     public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
@@ -28,6 +42,11 @@ public class SimpleRedisLock implements ILock {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate, RedisLockFactory lockFactory) {
+        this(name, stringRedisTemplate);
+        this.lockFactory = lockFactory;
+    }
+
     /**
      * 获取分布式锁
      *
@@ -45,6 +64,71 @@ public class SimpleRedisLock implements ILock {
         return Boolean.TRUE.equals(flag);
     }
 
+    /**
+     * 阻塞获取分布式锁
+     *
+     * @param timeSec
+     * @param waitMillis
+     * @return
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean lock(Long timeSec, long waitMillis) throws InterruptedException {
+        return acquire(timeSec, waitMillis, false) != null;
+    }
+
+    /**
+     * 获取分布式锁并发放fencing token
+     *
+     * @param timeSec
+     * @return
+     */
+    @Override
+    public Long tryLockWithToken(Long timeSec) {
+        Long token = stringRedisTemplate.execute(
+                TOKEN_LOCK_SCRIPT,
+                Arrays.asList(KEY_PREFIX + name, LOCK_TOKEN_KEY + name),
+                ID_PREFIX + Thread.currentThread().getId(), String.valueOf(TimeUnit.SECONDS.toMillis(timeSec))
+        );
+        return token == null || token == 0 ? null : token;
+    }
+
+    @Override
+    public Long lockWithToken(Long timeSec, long waitMillis) throws InterruptedException {
+        return acquire(timeSec, waitMillis, true);
+    }
+
+    /**
+     * 阻塞抢锁
+     *
+     * @param timeSec
+     * @param waitMillis
+     * @param withToken  是否发放fencing token
+     * @return 成功返回fencing token（不发放时为0），超时返回null
+     * @throws InterruptedException
+     */
+    private Long acquire(Long timeSec, long waitMillis, boolean withToken) throws InterruptedException {
+        String key = KEY_PREFIX + name;
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            //先拿门闩再抢锁，避免错过释放通知
+            CountDownLatch latch = lockFactory == null ? new CountDownLatch(1) : lockFactory.releaseLatch(key);
+            if (withToken) {
+                Long token = tryLockWithToken(timeSec);
+                if (token != null) {
+                    return token;
+                }
+            } else if (tryLock(timeSec)) {
+                return 0L;
+            }
+            //等待锁释放，最多等到锁过期
+            Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+            if (!RedisLockFactory.awaitRelease(latch, ttl == null ? 0L : ttl, deadline)) {
+                return null;
+            }
+        }
+    }
+
     /**
      * 解锁
      */
@@ -54,7 +138,7 @@ public class SimpleRedisLock implements ILock {
         stringRedisTemplate.execute(
                 UNLOCK_SCRIPT,
                 Collections.singletonList(KEY_PREFIX + name),
-                ID_PREFIX + Thread.currentThread().getId()
+                ID_PREFIX + Thread.currentThread().getId(), LOCK_RELEASE_CHANNEL
         );
     }
 //    @Override
@@ -0,0 +1,154 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TTL;
+
+/**
+ * 本地生成id，不访问Redis
+ * id结构（与RedisWorker保持高32位时间戳、低32位序列号的布局）：
+ * 1位符号 | 31位时间戳（秒） | 10位机器id | 22位序列号
+ * 机器id从Redis租借（SET NX + 过期时间），定时续期；Redis短暂不可用时，在租约到期前仍可继续生成
+ * 同一秒内序列号用完时等待时钟进入下一秒，不提前借用未来的时间戳，时间戳不会跑到时钟前面
+ */
+@Slf4j
+public class SnowflakeIdWorker {
+    public static final int WORKER_BITS = 10;
+    public static final int SEQUENCE_BITS = 22;
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    public static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 允许的最大时钟回拨（秒），回拨范围内继续使用上次的时间戳，超过则拒绝生成
+     */
+    private static final long MAX_BACKWARD_SECONDS = 5L;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("worker-renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    /**
+     * 当前时间戳（秒，相对于起始时间）
+     */
+    private final LongSupplier clock;
+    private final String token = UUID.randomUUID().toString(true);
+
+    private volatile long workerId = -1L;
+    /**
+     * 租约到期时间（毫秒），到期前未续期成功则不再生成id
+     */
+    private volatile long leaseExpireAt;
+
+    private long lastTimestamp = -1L;
+    private long sequence;
+
+    /**
+     * @param stringRedisTemplate
+     * @param clock               当前时间戳（秒，相对于起始时间）
+     */
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate, LongSupplier clock) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clock = clock;
+    }
+
+    /**
+     * 生成id
+     *
+     * @return
+     */
+    public synchronized long nextId() {
+        if (workerId < 0 || System.currentTimeMillis() > leaseExpireAt) {
+            throw new IllegalStateException("机器id租约已失效，无法生成id");
+        }
+        long timestamp = clock.getAsLong();
+        //1. 时钟回拨：小范围内沿用上次的时间戳
+        if (timestamp < lastTimestamp) {
+            if (lastTimestamp - timestamp > MAX_BACKWARD_SECONDS) {
+                throw new IllegalStateException("时钟回拨" + (lastTimestamp - timestamp) + "秒，拒绝生成id");
+            }
+            timestamp = lastTimestamp;
+        }
+        //2. 同一秒内序列号自增，用完后等待下一秒
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                log.warn("机器id{}在第{}秒的序列号已用完，等待下一秒", workerId, timestamp);
+                timestamp = awaitNextSecond(lastTimestamp);
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+        return timestamp << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+    }
+
+    /**
+     * 等待时钟越过指定的时间戳，最多等到时钟追上（小范围回拨时等待更久）
+     *
+     * @param lastTimestamp
+     * @return 新的时间戳
+     */
+    private long awaitNextSecond(long lastTimestamp) {
+        long timestamp;
+        while ((timestamp = clock.getAsLong()) <= lastTimestamp) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待下一秒时被中断", e);
+            }
+        }
+        return timestamp;
+    }
+
+    /**
+     * 租借或续期机器id，由定时任务调用
+     */
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        if (workerId >= 0) {
+            //1. 续期
+            Long renewed = stringRedisTemplate.execute(
+                    RENEW_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + workerId),
+                    token, String.valueOf(TimeUnit.SECONDS.toMillis(ID_WORKER_TTL))
+            );
+            if (renewed != null && renewed == 1L) {
+                leaseExpireAt = now + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL);
+                return;
+            }
+            log.error("机器id{}已被其他节点占用，重新租借", workerId);
+            workerId = -1L;
+        }
+        //2. 租借新的机器id
+        for (long id = 0; id <= MAX_WORKER_ID; id++) {
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, token, ID_WORKER_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                leaseExpireAt = now + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL);
+                workerId = id;
+                log.info("租借机器id：{}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的机器id");
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+}
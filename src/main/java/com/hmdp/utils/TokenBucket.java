@@ -0,0 +1,52 @@
+package com.hmdp.utils;
+
+/**
+ * 令牌桶，按固定速率生成令牌，桶满后不再增加
+ */
+public class TokenBucket {
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数
+     * @param capacity         桶容量，即允许的突发请求数
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000D;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1D) {
+            tokens -= 1D;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距离下一个令牌生成还需要的时间（纳秒）
+     *
+     * @return
+     */
+    public synchronized long nanosToNextPermit() {
+        refill();
+        return tokens >= 1D ? 0L : (long) ((1D - tokens) / permitsPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
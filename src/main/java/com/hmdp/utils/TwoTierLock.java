@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级锁：先抢本地锁，抢到后再抢分布式锁
+ * 同一节点上争抢同一个key的线程先在本地排队，每个节点同时只有一个线程访问Redis，
+ * 热点锁的Redis命令数只和节点数有关，和线程数无关
+ * 本地锁按key区分，由RedisLockFactory按引用计数创建和回收，不同的key互不影响
+ */
+public class TwoTierLock implements ILock {
+    private final String name;
+    private final RedisLockFactory lockFactory;
+    private final ILock distributedLock;
+
+    public TwoTierLock(String name, RedisLockFactory lockFactory, ILock distributedLock) {
+        this.name = name;
+        this.lockFactory = lockFactory;
+        this.distributedLock = distributedLock;
+    }
+
+    @Override
+    public boolean tryLock(Long timeSec) {
+        //1. 本地锁被其他线程持有，说明本节点已有线程在抢或持有同一个分布式锁，直接失败
+        ReentrantLock localLock = lockFactory.retainLocalLock(name);
+        if (!localLock.tryLock()) {
+            lockFactory.releaseLocalLock(name);
+            return false;
+        }
+        //2. 抢分布式锁，失败时释放本地锁
+        boolean success = false;
+        try {
+            success = distributedLock.tryLock(timeSec);
+            return success;
+        } finally {
+            if (!success) {
+                releaseLocal(localLock);
+            }
+        }
+    }
+
+    @Override
+    public boolean lock(Long timeSec, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        //1. 在本地排队
+        ReentrantLock localLock = acquireLocal(waitMillis);
+        if (localLock == null) {
+            return false;
+        }
+        //2. 用剩余的等待时间抢分布式锁
+        boolean success = false;
+        try {
+            success = distributedLock.lock(timeSec, Math.max(deadline - System.currentTimeMillis(), 0L));
+            return success;
+        } finally {
+            if (!success) {
+                releaseLocal(localLock);
+            }
+        }
+    }
+
+    @Override
+    public Long tryLockWithToken(Long timeSec) {
+        ReentrantLock localLock = lockFactory.retainLocalLock(name);
+        if (!localLock.tryLock()) {
+            lockFactory.releaseLocalLock(name);
+            return null;
+        }
+        Long token = null;
+        try {
+            token = distributedLock.tryLockWithToken(timeSec);
+            return token;
+        } finally {
+            if (token == null) {
+                releaseLocal(localLock);
+            }
+        }
+    }
+
+    @Override
+    public Long lockWithToken(Long timeSec, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        ReentrantLock localLock = acquireLocal(waitMillis);
+        if (localLock == null) {
+            return null;
+        }
+        Long token = null;
+        try {
+            token = distributedLock.lockWithToken(timeSec, Math.max(deadline - System.currentTimeMillis(), 0L));
+            return token;
+        } finally {
+            if (token == null) {
+                releaseLocal(localLock);
+            }
+        }
+    }
+
+    @Override
+    public void unLock() {
+        try {
+            distributedLock.unLock();
+        } finally {
+            ReentrantLock localLock = lockFactory.heldLocalLock(name);
+            if (localLock != null) {
+                releaseLocal(localLock);
+            }
+        }
+    }
+
+    /**
+     * 在本地排队获取本地锁
+     *
+     * @param waitMillis
+     * @return 超时返回null
+     * @throws InterruptedException
+     */
+    private ReentrantLock acquireLocal(long waitMillis) throws InterruptedException {
+        ReentrantLock localLock = lockFactory.retainLocalLock(name);
+        boolean locked = false;
+        try {
+            locked = localLock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+            return locked ? localLock : null;
+        } finally {
+            if (!locked) {
+                lockFactory.releaseLocalLock(name);
+            }
+        }
+    }
+
+    /**
+     * 释放本地锁，并减少引用计数
+     *
+     * @param localLock
+     */
+    private void releaseLocal(ReentrantLock localLock) {
+        localLock.unlock();
+        lockFactory.releaseLocalLock(name);
+    }
+}
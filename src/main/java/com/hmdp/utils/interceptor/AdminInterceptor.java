@@ -0,0 +1,34 @@
+package com.hmdp.utils.interceptor;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * 拦截器，管理接口（缓存管理、运行指标）只允许配置的管理员用户访问，需放在登录拦截器之后
+ */
+@Component
+public class AdminInterceptor implements HandlerInterceptor {
+
+    /**
+     * 管理员用户id，未配置时所有用户都不能访问管理接口
+     */
+    @Value("${hmdp.admin.user-ids:}")
+    private Set<Long> adminUserIds;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        if (user == null || !adminUserIds.contains(user.getId())) {
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
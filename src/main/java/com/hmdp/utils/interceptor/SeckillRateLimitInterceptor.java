@@ -0,0 +1,200 @@
+package com.hmdp.utils.interceptor;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+
+/**
+ * 秒杀限流拦截器，超出限流的请求直接返回429和重试时间，不再排队等待Tomcat线程和Redis连接
+ * 1. 本节点总的令牌桶
+ * 2. 本节点每个优惠券的令牌桶
+ * 3. 集群每个优惠券每秒的总配额，保存在Redis中，每个节点一次租借一批，用完再租
+ * 优惠券id来自请求路径，按优惠券的令牌桶保存在有界的LRU中，随意构造的id不会让内存无限增长
+ */
+@Component
+public class SeckillRateLimitInterceptor implements HandlerInterceptor {
+
+    private static final DefaultRedisScript<Long> LIMIT_SCRIPT;
+
+    /**
+     * 最多保存多少个优惠券的令牌桶
+     */
+    private static final int MAX_VOUCHERS = 1024;
+
+    static {
+        LIMIT_SCRIPT = new DefaultRedisScript<>();
+        LIMIT_SCRIPT.setLocation(new ClassPathResource("limit.lua"));
+        LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 本节点每秒允许的秒杀请求数，小于等于0不限制
+     */
+    @Value("${hmdp.seckill.limit.qps:2000}")
+    private int qps;
+
+    /**
+     * 本节点每个优惠券每秒允许的秒杀请求数，小于等于0不限制
+     */
+    @Value("${hmdp.seckill.limit.voucher-qps:500}")
+    private int voucherQps;
+
+    /**
+     * 集群每个优惠券每秒允许的秒杀请求数，小于等于0不限制
+     */
+    @Value("${hmdp.seckill.limit.cluster-voucher-qps:0}")
+    private int clusterVoucherQps;
+
+    /**
+     * 每次从集群配额中租借的令牌数
+     */
+    @Value("${hmdp.seckill.limit.lease-size:20}")
+    private int leaseSize;
+
+    private volatile TokenBucket globalBucket;
+
+    private final LRUCache<Long, TokenBucket> voucherBuckets = CacheUtil.newLRUCache(MAX_VOUCHERS);
+
+    private final LRUCache<Long, ClusterBudget> clusterBudgets = CacheUtil.newLRUCache(MAX_VOUCHERS);
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //1. 本节点总限流
+        if (qps > 0) {
+            TokenBucket bucket = globalBucket();
+            if (!bucket.tryAcquire()) {
+                return reject(response, bucket.nanosToNextPermit());
+            }
+        }
+
+        Long voucherId = voucherId(request);
+        if (voucherId == null) {
+            return true;
+        }
+
+        //2. 本节点优惠券限流
+        if (voucherQps > 0) {
+            TokenBucket bucket = voucherBuckets.get(voucherId, () -> new TokenBucket(voucherQps, voucherQps));
+            if (!bucket.tryAcquire()) {
+                return reject(response, bucket.nanosToNextPermit());
+            }
+        }
+
+        //3. 集群优惠券限流
+        if (clusterVoucherQps > 0) {
+            ClusterBudget budget = clusterBudgets.get(voucherId, () -> new ClusterBudget(voucherId));
+            if (!budget.tryAcquire()) {
+                return reject(response, TimeUnit.SECONDS.toNanos(1) - System.currentTimeMillis() % 1000 * 1_000_000L);
+            }
+        }
+        return true;
+    }
+
+    private TokenBucket globalBucket() {
+        if (globalBucket == null) {
+            synchronized (this) {
+                if (globalBucket == null) {
+                    globalBucket = new TokenBucket(qps, qps);
+                }
+            }
+        }
+        return globalBucket;
+    }
+
+    /**
+     * 从路径中获取优惠券id
+     *
+     * @param request
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private Long voucherId(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null || variables.get("id") == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(variables.get("id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 拒绝请求，返回429和重试时间
+     *
+     * @param response
+     * @param retryNanos 建议多久后重试（纳秒）
+     * @return
+     */
+    private boolean reject(HttpServletResponse response, long retryNanos) throws Exception {
+        long retryMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(retryNanos), 1L);
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(Math.max((retryMillis + 999) / 1000, 1L)));
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONUtil.toJsonStr(new Result(false, "抢购人数太多，请" + retryMillis + "毫秒后重试", retryMillis, null)));
+        return false;
+    }
+
+    /**
+     * 本节点从集群配额中租借到的令牌
+     */
+    private class ClusterBudget {
+        private final Long voucherId;
+        private long second;
+        private int permits;
+        private boolean exhausted;
+
+        ClusterBudget(Long voucherId) {
+            this.voucherId = voucherId;
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.currentTimeMillis() / 1000;
+            if (now != second) {
+                //进入新的一秒，之前租借的令牌作废
+                second = now;
+                permits = 0;
+                exhausted = false;
+            }
+            if (permits == 0) {
+                if (exhausted) {
+                    return false;
+                }
+                Long leased = stringRedisTemplate.execute(
+                        LIMIT_SCRIPT,
+                        Collections.singletonList(SECKILL_LIMIT_KEY + voucherId + ":" + now),
+                        String.valueOf(clusterVoucherQps), String.valueOf(leaseSize)
+                );
+                permits = leased == null ? 0 : leased.intValue();
+                if (permits == 0) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            permits--;
+            return true;
+        }
+    }
+}
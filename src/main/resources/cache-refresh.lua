@@ -0,0 +1,14 @@
+---
+--- 提前刷新缓存：只有key仍是刷新前读到的值时才写入，期间被删除或被其他写入覆盖时放弃
+--- KEYS[1] 缓存的key
+--- ARGV[1] 刷新前读到的值
+--- ARGV[2] 新的值
+--- ARGV[3] 有效期（毫秒）
+--- 返回值：写入成功返回1，否则返回0
+---
+
+if (redis.call('get', KEYS[1]) == ARGV[1]) then
+    redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3])
+    return 1
+end
+return 0
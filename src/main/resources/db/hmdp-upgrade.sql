@@ -0,0 +1,15 @@
+-- ----------------------------
+-- 已有数据库的升级脚本，按顺序执行一次；新建的数据库直接使用hmdp.sql
+-- ----------------------------
+
+-- ----------------------------
+-- tb_seckill_voucher 记录最近一次扣减库存的写锁fencing token，过期的写锁持有者无法再扣减库存
+-- ----------------------------
+ALTER TABLE `tb_seckill_voucher`
+  ADD COLUMN `fencing_token` bigint(20) UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次扣减库存的写锁fencing token';
+
+-- ----------------------------
+-- tb_seckill_voucher 保存库存分段数，Redis数据丢失后按原分段数重新预热
+-- ----------------------------
+ALTER TABLE `tb_seckill_voucher`
+  ADD COLUMN `segments` int(8) UNSIGNED NOT NULL DEFAULT 1 COMMENT '库存分段数，大于1时秒杀库存分散到多个Redis key';
@@ -92,6 +92,8 @@ CREATE TABLE `tb_seckill_voucher`  (
   `begin_time` timestamp NOT NULL DEFAULT '0000-00-00 00:00:00' COMMENT '生效时间',
   `end_time` timestamp NOT NULL DEFAULT '0000-00-00 00:00:00' COMMENT '失效时间',
   `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  `fencing_token` bigint(20) UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次扣减库存的写锁fencing token',
+  `segments` int(8) UNSIGNED NOT NULL DEFAULT 1 COMMENT '库存分段数，大于1时秒杀库存分散到多个Redis key',
   PRIMARY KEY (`voucher_id`) USING BTREE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '秒杀优惠券表，与优惠券是一对一关系' ROW_FORMAT = Compact;
 
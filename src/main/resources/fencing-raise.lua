@@ -0,0 +1,13 @@
+---
+--- 把fencing token计数器提高到不小于指定值，用于Redis丢失计数器后与数据库中已写入的token对齐
+--- KEYS[1] fencing token计数器的key
+--- ARGV[1] 数据库中已写入的最大token
+--- 返回值：提高了返回1，计数器已不小于该值返回0
+---
+
+local current = tonumber(redis.call('get', KEYS[1]) or '0')
+if (current < tonumber(ARGV[1])) then
+    redis.call('set', KEYS[1], ARGV[1])
+    return 1
+end
+return 0
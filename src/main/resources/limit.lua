@@ -0,0 +1,21 @@
+---
+--- 从集群共享的每秒配额中租借一批令牌
+--- KEYS[1] 当前秒的配额key
+--- ARGV[1] 每秒配额
+--- ARGV[2] 本次租借数量
+--- 返回值：实际租借到的令牌数，0表示本秒配额已用完
+---
+
+local limit = tonumber(ARGV[1])
+local lease = tonumber(ARGV[2])
+
+local used = redis.call('incrby', KEYS[1], lease)
+if (used == lease) then
+    -- 本秒第一次租借，设置过期时间
+    redis.call('expire', KEYS[1], 2)
+end
+local before = used - lease
+if (before >= limit) then
+    return 0
+end
+return math.min(lease, limit - before)
@@ -0,0 +1,13 @@
+---
+--- 简单锁加锁并发放fencing token，加锁和发放token是原子的，token的顺序与持有锁的顺序一致
+--- KEYS[1] 锁的key
+--- KEYS[2] fencing token计数器的key
+--- ARGV[1] 持有者标识
+--- ARGV[2] 锁的有效期（毫秒）
+--- 返回值：加锁成功返回fencing token，失败返回0
+---
+
+if (redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2])) then
+    return redis.call('incr', KEYS[2])
+end
+return 0
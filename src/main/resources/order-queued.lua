@@ -0,0 +1,20 @@
+---
+--- 记录订单进入消息队列，订单已写入数据库或失败时不覆盖
+--- 消费者可能在下单线程记录排队状态之前就已写入订单，排队状态不能覆盖最终状态
+--- KEYS[1] 订单状态key（hash）
+--- KEYS[2] 用户订单key（优惠券+用户 -> 订单id）
+--- ARGV[1] 订单id
+--- ARGV[2] 优惠券id
+--- ARGV[3] 用户id
+--- ARGV[4] 有效期（秒）
+--- 返回值：1已记录 0已是最终状态
+---
+
+local status = redis.call('hget', KEYS[1], 'status')
+if (status and status ~= 'QUEUED') then
+    return 0
+end
+redis.call('hset', KEYS[1], 'orderId', ARGV[1], 'voucherId', ARGV[2], 'userId', ARGV[3], 'status', 'QUEUED')
+redis.call('expire', KEYS[1], ARGV[4])
+redis.call('set', KEYS[2], ARGV[1], 'EX', ARGV[4])
+return 1
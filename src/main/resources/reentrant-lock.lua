@@ -0,0 +1,20 @@
+---
+--- 可重入锁加锁，锁用hash保存：field为持有者标识，value为重入次数；fencing字段保存本次持有的fencing token
+--- KEYS[1] 锁的key
+--- KEYS[2] fencing token计数器的key，不传则不发放token
+--- ARGV[1] 持有者标识
+--- ARGV[2] 锁的有效期（毫秒）
+--- 返回值：加锁成功返回 {重入次数, fencing token（未发放为0）}，锁被其他持有者占用时返回 {0, 锁剩余有效期（毫秒）}
+---
+
+if (redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    local count = redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    -- 持有期间第一次要求token时发放，重入时沿用
+    if (#KEYS > 1 and redis.call('hexists', KEYS[1], 'fencing') == 0) then
+        redis.call('hset', KEYS[1], 'fencing', redis.call('incr', KEYS[2]))
+    end
+    local token = redis.call('hget', KEYS[1], 'fencing')
+    return {count, token and tonumber(token) or 0}
+end
+return {0, math.max(redis.call('pttl', KEYS[1]), 1)}
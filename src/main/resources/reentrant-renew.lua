@@ -0,0 +1,12 @@
+---
+--- 看门狗续期，只有持有者才能续期
+--- KEYS[1] 锁的key
+--- ARGV[1] 持有者标识
+--- ARGV[2] 锁的有效期（毫秒）
+--- 返回值：1续期成功 0锁已不属于当前持有者
+---
+
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,19 @@
+---
+--- 可重入锁解锁，重入次数减到0时删除锁；仍被持有时的有效期由看门狗续期
+--- KEYS[1] 锁的key
+--- ARGV[1] 持有者标识
+--- ARGV[2] 锁释放通知的频道
+--- 返回值：1锁已释放 0重入次数减1、锁仍被持有 -1锁不属于当前持有者
+---
+
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+    return -1
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if (count > 0) then
+    return 0
+end
+redis.call('del', KEYS[1])
+-- 通知等待者
+redis.call('publish', ARGV[2], KEYS[1])
+return 1
@@ -0,0 +1,35 @@
+---
+--- 等候室放行：从排队队列头部取出一批用户放入通行集合，集群中每秒只有一个节点执行
+--- KEYS[1] 排队队列（zset：用户id -> 排队时间）
+--- KEYS[2] 通行集合（zset：用户id -> 通行证过期时间）
+--- KEYS[3] 本轮放行标记
+--- ARGV[1] 每轮放行人数
+--- ARGV[2] 当前时间（毫秒）
+--- ARGV[3] 通行证有效期（毫秒）
+--- 返回值：本轮放行人数
+---
+
+if (not redis.call('set', KEYS[3], '1', 'NX', 'PX', 900)) then
+    -- 本轮已经由其他节点放行
+    return 0
+end
+
+local n = tonumber(ARGV[1])
+local now = tonumber(ARGV[2])
+
+-- 1. 清理过期的通行证
+redis.call('zremrangebyscore', KEYS[2], '-inf', now)
+
+-- 2. 取出队列头部的用户
+local users = redis.call('zrange', KEYS[1], 0, n - 1)
+if (#users == 0) then
+    return 0
+end
+redis.call('zremrangebyrank', KEYS[1], 0, #users - 1)
+
+-- 3. 发放通行证
+local expire = now + tonumber(ARGV[3])
+for i = 1, #users do
+    redis.call('zadd', KEYS[2], expire, users[i])
+end
+return #users
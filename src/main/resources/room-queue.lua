@@ -0,0 +1,9 @@
+---
+--- 进入等候室排队，已在队列中时不改变位置（ZADD NX）
+--- KEYS[1] 排队队列（zset：用户id -> 进入时间）
+--- ARGV[1] 用户id
+--- ARGV[2] 当前时间（毫秒）
+--- 返回值：1新加入 0已在队列中
+---
+
+return redis.call('zadd', KEYS[1], 'NX', ARGV[2], ARGV[1])
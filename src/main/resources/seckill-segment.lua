@@ -0,0 +1,40 @@
+---
+--- 分段库存的秒杀资格判断，只操作用户所属的库存分段
+--- KEYS[1] 分段库存key（hash：stock、begin、end）
+--- KEYS[2] 分段订单key（set：已下单的用户id）
+--- ARGV[1] 用户id
+--- ARGV[2] 当前时间（秒）
+--- 返回值：0成功 1本分段库存不足（已预占一人一单记录，需到其他分段扣减） 2重复下单 3未开始 4已结束 5未预热
+---
+
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+
+-- 1. 查询库存和秒杀时间
+local info = redis.call('hmget', stockKey, 'stock', 'begin', 'end')
+if (not info[1]) then
+    return 5
+end
+
+-- 2. 判断秒杀时间
+if (now < tonumber(info[2])) then
+    return 3
+end
+if (now > tonumber(info[3])) then
+    return 4
+end
+
+-- 3. 判断用户是否已经下单
+if (redis.call('sismember', orderKey, userId) == 1) then
+    return 2
+end
+
+-- 4. 记录下单用户，本分段库存不足时也先预占，防止同一用户并发到其他分段重复扣减
+redis.call('sadd', orderKey, userId)
+if (tonumber(info[1]) <= 0) then
+    return 1
+end
+redis.call('hincrby', stockKey, 'stock', -1)
+return 0
@@ -0,0 +1,12 @@
+---
+--- 从其他库存分段扣减一个库存
+--- KEYS[1] 分段库存key
+--- 返回值：0成功 1库存不足
+---
+
+local stock = tonumber(redis.call('hget', KEYS[1], 'stock'))
+if (not stock or stock <= 0) then
+    return 1
+end
+redis.call('hincrby', KEYS[1], 'stock', -1)
+return 0
@@ -0,0 +1,51 @@
+---
+--- 秒杀资格判断：时间窗口、库存、一人一单，在Redis中一次原子完成
+--- KEYS[1] 库存key（hash：stock、begin、end）
+--- KEYS[2] 订单key（set：已下单的用户id）
+--- KEYS[3] 订单消息队列（stream）
+--- ARGV[1] 用户id
+--- ARGV[2] 当前时间（秒）
+--- ARGV[3] 订单id
+--- ARGV[4] 优惠券id
+--- 返回值：0成功 1库存不足 2重复下单 3未开始 4已结束 5未预热
+---
+
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local streamKey = KEYS[3]
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+local orderId = ARGV[3]
+local voucherId = ARGV[4]
+
+-- 1. 查询库存和秒杀时间
+local info = redis.call('hmget', stockKey, 'stock', 'begin', 'end')
+if (not info[1]) then
+    -- 秒杀信息未写入Redis
+    return 5
+end
+
+-- 2. 判断秒杀时间
+if (now < tonumber(info[2])) then
+    return 3
+end
+if (now > tonumber(info[3])) then
+    return 4
+end
+
+-- 3. 判断用户是否已经下单
+if (redis.call('sismember', orderKey, userId) == 1) then
+    return 2
+end
+
+-- 4. 判断库存是否充足
+if (tonumber(info[1]) <= 0) then
+    return 1
+end
+
+-- 5. 扣减库存，记录下单用户
+redis.call('hincrby', stockKey, 'stock', -1)
+redis.call('sadd', orderKey, userId)
+-- 6. 发送订单消息到队列，由后台消费者组写入数据库
+redis.call('xadd', streamKey, '*', 'id', orderId, 'userId', userId, 'voucherId', voucherId)
+return 0
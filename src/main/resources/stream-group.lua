@@ -0,0 +1,12 @@
+---
+--- 创建消费者组，stream不存在时一并创建（MKSTREAM），组已存在时忽略
+--- KEYS[1] stream key
+--- ARGV[1] 消费者组名
+---
+
+local ok = redis.pcall('xgroup', 'create', KEYS[1], ARGV[1], '0', 'MKSTREAM')
+if (type(ok) == 'table' and ok.err) then
+    -- BUSYGROUP：消费者组已存在
+    return 0
+end
+return 1
@@ -5,7 +5,9 @@
 ---
 
 if (redis.call('get', KEYS[1]) == ARGV[1]) then
-    -- 释放锁
-    return redis.call('del', KEYS[1])
+    -- 释放锁，并通知等待者（ARGV[2]为锁释放通知的频道）
+    redis.call('del', KEYS[1])
+    redis.call('publish', ARGV[2], KEYS[1])
+    return 1
 end
 return 0
\ No newline at end of file
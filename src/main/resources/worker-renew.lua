@@ -0,0 +1,12 @@
+---
+--- 续期机器id租约，只有持有者才能续期
+--- KEYS[1] 机器id的key
+--- ARGV[1] 持有者标识
+--- ARGV[2] 租约时长（毫秒）
+--- 返回值：1续期成功 0租约已不属于当前节点
+---
+
+if (redis.call('get', KEYS[1]) == ARGV[1]) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,169 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(Shop.class, ShopType.class, SeckillVoucher.class, UserDTO.class);
+
+    @Test
+    void roundTripShop() {
+        Shop shop = new Shop()
+                .setId(Long.MAX_VALUE)
+                .setName("103茶餐厅 🍵")
+                .setTypeId(-1L)
+                .setImages("")
+                .setArea("大关")
+                .setX(-120.149192)
+                .setY(Double.NaN)
+                .setAvgPrice(Long.MIN_VALUE)
+                .setSold(Integer.MIN_VALUE)
+                .setComments(0)
+                .setScore(-37)
+                .setCreateTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 4, 10, 0, 0, 123_000_000));
+        //address、openHours、distance为null
+
+        String raw = codec.encode(shop);
+
+        assertTrue(raw.startsWith(BinaryCacheCodec.MARKER));
+        assertEquals(shop, codec.decode(raw, Shop.class));
+    }
+
+    @Test
+    void roundTripShopType() {
+        ShopType shopType = new ShopType()
+                .setId(1L)
+                .setName("美食")
+                .setSort(-1);
+        //icon、createTime、updateTime为null
+
+        assertEquals(shopType, codec.decode(codec.encode(shopType), ShopType.class));
+    }
+
+    @Test
+    void roundTripSeckillVoucher() {
+        SeckillVoucher voucher = new SeckillVoucher()
+                .setVoucherId(10L)
+                .setStock(-5)
+                .setBeginTime(LocalDateTime.of(2022, 1, 26, 10, 9, 17))
+                .setEndTime(LocalDateTime.of(2037, 1, 26, 10, 9, 17))
+                .setFencingToken(0L)
+                .setSegments(16);
+
+        assertEquals(voucher, codec.decode(codec.encode(voucher), SeckillVoucher.class));
+    }
+
+    @Test
+    void roundTripUserDTO() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("可可今天不吃肉 ü ß");
+
+        assertEquals(user, codec.decode(codec.encode(user), UserDTO.class));
+    }
+
+    @Test
+    void roundTripAllFieldsNull() {
+        assertEquals(new Shop(), codec.decode(codec.encode(new Shop()), Shop.class));
+    }
+
+    @Test
+    void roundTripLogicalExpire() {
+        Shop shop = new Shop().setId(1L).setName("测试店铺").setX(-0.0);
+        LocalDateTime expireTime = LocalDateTime.of(2022, 1, 4, 10, 0, 30, 500);
+
+        String raw = codec.encodeLogical(shop, expireTime);
+        RedisData redisData = codec.decodeLogical(raw, Shop.class);
+
+        assertNotNull(redisData);
+        assertEquals(expireTime, redisData.getExpireTime());
+        assertEquals(shop, redisData.getData());
+        //逻辑过期格式和普通格式不能混用
+        assertNull(codec.decode(raw, Shop.class));
+        assertNull(codec.decodeLogical(codec.encode(shop), Shop.class));
+    }
+
+    @Test
+    void fingerprintMismatchIsMiss() {
+        String raw = codec.encode(new Shop().setId(1L).setName("测试店铺"));
+        byte[] bytes = Base64.getDecoder().decode(raw.substring(BinaryCacheCodec.MARKER.length()));
+        //第0个字节是类型，第1~4个字节是结构指纹
+        bytes[1] ^= 0x01;
+        String tampered = BinaryCacheCodec.MARKER + Base64.getEncoder().encodeToString(bytes);
+
+        assertNull(codec.decode(tampered, Shop.class));
+        //按另一个实体类解码时指纹也不一致
+        assertNull(codec.decode(raw, ShopType.class));
+    }
+
+    @Test
+    void unregisteredTypeIsMiss() {
+        String raw = codec.encode(new Shop().setId(1L));
+
+        assertNull(new BinaryCacheCodec(ShopType.class).decode(raw, Shop.class));
+    }
+
+    @Test
+    void decodesLegacyJson() {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec();
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅").setX(-120.149192).setAvgPrice(80L);
+
+        String raw = jsonCodec.encode(shop);
+
+        assertFalse(raw.startsWith(BinaryCacheCodec.MARKER));
+        assertEquals(shop, codec.decode(raw, Shop.class));
+    }
+
+    @Test
+    void decodesLegacyLogicalJson() {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec();
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅");
+        LocalDateTime expireTime = LocalDateTime.of(2022, 1, 4, 10, 0, 30);
+
+        RedisData redisData = codec.decodeLogical(jsonCodec.encodeLogical(shop, expireTime), Shop.class);
+
+        assertNotNull(redisData);
+        assertEquals(expireTime, redisData.getExpireTime());
+        assertEquals(shop, redisData.getData());
+    }
+
+    @Test
+    void unregisteredTypeFallsBackToJson() {
+        BinaryCacheCodec shopOnly = new BinaryCacheCodec(Shop.class);
+        ShopType shopType = new ShopType().setId(1L).setName("美食");
+
+        String raw = shopOnly.encode(shopType);
+
+        assertFalse(raw.startsWith(BinaryCacheCodec.MARKER));
+        assertEquals(shopType, shopOnly.decode(raw, ShopType.class));
+    }
+
+    @Test
+    void jsonCodecTreatsBinaryAsMiss() {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec();
+        Shop shop = new Shop().setId(1L);
+
+        assertNull(jsonCodec.decode(codec.encode(shop), Shop.class));
+        assertNull(jsonCodec.decodeLogical(codec.encodeLogical(shop, LocalDateTime.now()), Shop.class));
+    }
+
+    @Test
+    void rejectsUnsupportedFieldType() {
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCacheCodec(Unsupported.class));
+    }
+
+    static class Unsupported {
+        private List<String> tags;
+    }
+}
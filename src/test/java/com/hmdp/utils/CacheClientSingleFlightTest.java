@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheClientSingleFlightTest {
+
+    private static final int FOLLOWERS = 8;
+
+    private final CacheClient cacheClient = new CacheClient();
+
+    @Test
+    void concurrentLoadsShareOneResult() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ExecutorService pool = newPool(FOLLOWERS + 1, threads);
+        try {
+            Future<Object> leader = pool.submit(() -> cacheClient.singleFlight("cache:shop:1", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return result;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            List<Future<Object>> followers = new ArrayList<>();
+            for (int i = 0; i < FOLLOWERS; i++) {
+                followers.add(pool.submit(() -> cacheClient.singleFlight("cache:shop:1", () -> {
+                    loads.incrementAndGet();
+                    return new Object();
+                })));
+            }
+            //等所有线程都进入等待后再放行
+            awaitWaiting(threads, FOLLOWERS + 1);
+            release.countDown();
+
+            assertSame(result, leader.get(5, TimeUnit.SECONDS));
+            for (Future<Object> follower : followers) {
+                assertSame(result, follower.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void followersSeeLeaderException() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("db down");
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ExecutorService pool = newPool(2, threads);
+        try {
+            Future<Object> leader = pool.submit(() -> cacheClient.singleFlight("cache:shop:1", () -> {
+                started.countDown();
+                await(release);
+                throw failure;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Object> follower = pool.submit(() -> cacheClient.singleFlight("cache:shop:1", Object::new));
+            awaitWaiting(threads, 2);
+            release.countDown();
+
+            assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+            assertSame(failure, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void resultIsNotKeptAfterLoad() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cacheClient.singleFlight("cache:shop:1", loads::incrementAndGet);
+        cacheClient.singleFlight("cache:shop:1", loads::incrementAndGet);
+        assertThrows(IllegalStateException.class, () -> cacheClient.singleFlight("cache:shop:1", () -> {
+            throw new IllegalStateException();
+        }));
+        cacheClient.singleFlight("cache:shop:1", loads::incrementAndGet);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void differentKeysLoadIndependently() {
+        assertEquals("1", cacheClient.singleFlight("cache:shop:1", () -> "1"));
+        assertEquals("2", cacheClient.singleFlight("cache:shop:2", () -> "2"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ExecutorService newPool(int size, List<Thread> threads) {
+        return Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r);
+            threads.add(thread);
+            return thread;
+        });
+    }
+
+    /**
+     * 等待线程都阻塞在singleFlight中（领头线程等待放行，其他线程等待领头线程的结果）
+     */
+    private static void awaitWaiting(List<Thread> threads, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            long waiting = threads.stream()
+                    .filter(t -> t.getState() == Thread.State.WAITING && isInSingleFlight(t))
+                    .count();
+            if (waiting >= expected) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        fail("线程未全部进入等待");
+    }
+
+    private static boolean isInSingleFlight(Thread thread) {
+        for (StackTraceElement element : thread.getStackTrace()) {
+            if ("singleFlight".equals(element.getMethodName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheRebuildExecutorTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private CacheRebuildExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            ReflectionTestUtils.invokeMethod(executor, "destroy");
+        }
+    }
+
+    @Test
+    void deduplicatesPendingKey() throws InterruptedException {
+        executor = newExecutor(1, 10);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(executor.submit("cache:shop:1", () -> {
+            runs.incrementAndGet();
+            block();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(executor.submit("cache:shop:1", runs::incrementAndGet));
+        //不同的key不受影响
+        assertTrue(executor.submit("cache:shop:2", () -> {
+        }));
+
+        Map<String, Object> snapshot = executor.snapshot();
+        assertEquals(2L, snapshot.get("submitted"));
+        assertEquals(1L, snapshot.get("deduplicated"));
+
+        release.countDown();
+        //执行完成后同一个key可以再次提交
+        awaitTrue(() -> executor.submit("cache:shop:1", runs::incrementAndGet));
+        awaitTrue(() -> runs.get() == 2);
+    }
+
+    @Test
+    void shedsWhenQueueIsFull() throws InterruptedException {
+        executor = newExecutor(1, 1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(executor.submit("cache:shop:1", this::block));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.submit("cache:shop:2", runs::incrementAndGet));
+        assertFalse(executor.submit("cache:shop:3", runs::incrementAndGet));
+        //被丢弃的key不会留在排队集合中，再次提交仍按队列已满处理而不是去重
+        assertFalse(executor.submit("cache:shop:3", runs::incrementAndGet));
+
+        Map<String, Object> snapshot = executor.snapshot();
+        assertEquals(2L, snapshot.get("submitted"));
+        assertEquals(2L, snapshot.get("shed"));
+        assertEquals(0L, snapshot.get("deduplicated"));
+        assertEquals(1, snapshot.get("queueDepth"));
+        assertEquals(1, snapshot.get("queueCapacity"));
+
+        release.countDown();
+        awaitTrue(() -> runs.get() == 1);
+        awaitTrue(() -> executor.submit("cache:shop:3", runs::incrementAndGet));
+        awaitTrue(() -> runs.get() == 2);
+    }
+
+    @Test
+    void countsFailuresAndReleasesKey() {
+        executor = newExecutor(1, 10);
+
+        assertTrue(executor.submit("cache:shop:1", () -> {
+            throw new IllegalStateException("db down");
+        }));
+
+        awaitTrue(() -> Long.valueOf(1L).equals(executor.snapshot().get("failures")));
+        awaitTrue(() -> executor.submit("cache:shop:1", () -> {
+        }));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordsRebuildTime() {
+        executor = newExecutor(2, 10);
+
+        executor.submit("cache:shop:1", () -> {
+        });
+        executor.submit("cache:shop:2", () -> {
+        });
+
+        awaitTrue(() -> Long.valueOf(2L).equals(
+                ((Map<String, Object>) executor.snapshot().get("rebuildTime")).get("count")));
+    }
+
+    private static CacheRebuildExecutor newExecutor(int threads, int queueCapacity) {
+        CacheRebuildExecutor executor = new CacheRebuildExecutor();
+        ReflectionTestUtils.setField(executor, "threads", threads);
+        ReflectionTestUtils.setField(executor, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.invokeMethod(executor, "init");
+        return executor;
+    }
+
+    private void block() {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("等待超时");
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptySnapshot() {
+        Map<String, Object> snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0L, snapshot.get("count"));
+        assertEquals(0.0, snapshot.get("avgMs"));
+        assertEquals(0.0, snapshot.get("maxMs"));
+        histogram(snapshot).values().forEach(n -> assertEquals(0L, n));
+    }
+
+    @Test
+    void bucketUpperBoundsAreInclusive() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0L);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1) + 1);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5000));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5_000_900));
+
+        Map<String, Long> buckets = histogram(histogram.snapshot());
+
+        //恰好等于上限的计入该桶，超过1纳秒也计入下一个桶
+        assertEquals(2L, buckets.get("<=1ms"));
+        assertEquals(3L, buckets.get("<=5ms"));
+        assertEquals(1L, buckets.get("<=5000ms"));
+        assertEquals(1L, buckets.get(">5000ms"));
+        assertEquals(7L, buckets.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void countAverageAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(30));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+
+        Map<String, Object> snapshot = histogram.snapshot();
+
+        assertEquals(3L, snapshot.get("count"));
+        assertEquals(20.0, (Double) snapshot.get("avgMs"), 1e-9);
+        assertEquals(30.0, (Double) snapshot.get("maxMs"), 1e-9);
+    }
+
+    @Test
+    void concurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    histogram.record(TimeUnit.MILLISECONDS.toNanos(j % 100));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, Object> snapshot = histogram.snapshot();
+
+        assertEquals(80000L, snapshot.get("count"));
+        assertEquals(99.0, (Double) snapshot.get("maxMs"), 1e-9);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> histogram(Map<String, Object> snapshot) {
+        return (Map<String, Long>) snapshot.get("histogram");
+    }
+}
@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RedisBloomFilterTest {
+
+    private static final long NUM_BITS = 9585L;
+    private static final int NUM_HASHES = 7;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private RedisBloomFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        filter = new RedisBloomFilter("bf:shop", 1000L, 0.01, stringRedisTemplate);
+    }
+
+    @Test
+    void sizing() {
+        //m = -n*ln(p)/(ln2)^2，k = m/n*ln2
+        assertEquals("bf:shop{" + NUM_BITS + ":" + NUM_HASHES + "}", filter.getKey());
+        //过小的参数至少使用64位
+        assertEquals("bf{64:44}", new RedisBloomFilter("bf", 1L, 0.5, stringRedisTemplate).getKey());
+    }
+
+    @Test
+    void offsetsAreInRangeAndDeterministic() {
+        RedisBloomFilter other = new RedisBloomFilter("bf:other", 1000L, 0.01, stringRedisTemplate);
+        for (long id = -1000L; id < 1000L; id++) {
+            long[] offsets = filter.offsets(id);
+            assertEquals(NUM_HASHES, offsets.length);
+            for (long offset : offsets) {
+                assertTrue(offset >= 0 && offset < NUM_BITS, "offset=" + offset);
+            }
+            assertArrayEquals(offsets, other.offsets(id));
+        }
+        assertArrayEquals(filter.offsets("中文"), filter.offsets("中文"));
+    }
+
+    @Test
+    void noFalseNegativesAndFalsePositivesNearFpp() {
+        for (long id = 1; id <= 1000; id++) {
+            filter.addLocal(id);
+        }
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (long id = 1001; id <= 11000; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "falsePositives=" + falsePositives);
+    }
+
+    @Test
+    void addWritesLocalAndRedis() {
+        filter.add(1L);
+
+        assertTrue(filter.mightContain(1L));
+        verify(stringRedisTemplate).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void loadsCompleteBitmap() {
+        redisState(true, "1");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(true, 1L, 2L));
+
+        assertTrue(filter.loadFromRedis());
+
+        assertTrue(filter.mightContain(1L));
+        assertTrue(filter.mightContain(2L));
+    }
+
+    @Test
+    void ignoresIncompleteBitmap() {
+        redisState(true, "1");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(false, 1L));
+
+        assertFalse(filter.loadFromRedis());
+
+        assertFalse(filter.mightContain(1L));
+    }
+
+    @Test
+    void ignoresMissingBitmap() {
+        redisState(false, "1");
+
+        assertFalse(filter.loadFromRedis());
+        verify(stringRedisTemplate, never()).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void skipsFullReadWhenVersionIsUnchanged() {
+        redisState(true, "1");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(true, 1L));
+        assertTrue(filter.loadFromRedis());
+
+        assertTrue(filter.loadFromRedis());
+
+        verify(stringRedisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void rereadsBitmapWhenVersionChanges() {
+        redisState(true, "1");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(true, 1L));
+        assertTrue(filter.loadFromRedis());
+
+        redisState(true, "2");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(true, 1L, 2L));
+        assertTrue(filter.loadFromRedis());
+
+        assertTrue(filter.mightContain(2L));
+        verify(stringRedisTemplate, times(2)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void loadMergesIntoLocalBits() {
+        filter.addLocal(3L);
+        redisState(true, "1");
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(bitmap(true, 1L));
+
+        assertTrue(filter.loadFromRedis());
+
+        //本地已有的位不会被覆盖
+        assertTrue(filter.mightContain(1L));
+        assertTrue(filter.mightContain(3L));
+    }
+
+    /**
+     * 模拟加载前的检查：位图是否存在、位图的版本号
+     */
+    private void redisState(boolean exists, String version) {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(exists, version));
+    }
+
+    /**
+     * 按Redis SETBIT的位序（第0位是第一个字节的最高位）构造位图
+     */
+    private byte[] bitmap(boolean complete, Object... values) {
+        byte[] bytes = new byte[(int) (NUM_BITS / 8) + 1];
+        for (Object value : values) {
+            for (long offset : filter.offsets(value)) {
+                setBit(bytes, offset);
+            }
+        }
+        if (complete) {
+            setBit(bytes, NUM_BITS);
+        }
+        return bytes;
+    }
+
+    private static void setBit(byte[] bytes, long offset) {
+        bytes[(int) (offset >>> 3)] |= 0x80 >>> (int) (offset & 7);
+    }
+}
@@ -0,0 +1,158 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.SnowflakeIdWorker.MAX_SEQUENCE;
+import static com.hmdp.utils.SnowflakeIdWorker.SEQUENCE_BITS;
+import static com.hmdp.utils.SnowflakeIdWorker.WORKER_BITS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SnowflakeIdWorkerTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private final AtomicLong clock = new AtomicLong(100L);
+    private SnowflakeIdWorker worker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        //机器id 0 已被其他节点占用，1 空闲
+        when(valueOperations.setIfAbsent(eq(ID_WORKER_KEY + 1), anyString(), anyLong(), any())).thenReturn(true);
+        worker = new SnowflakeIdWorker(stringRedisTemplate, clock::get);
+    }
+
+    @Test
+    void refusesToGenerateWithoutLease() {
+        assertThrows(IllegalStateException.class, () -> worker.nextId());
+    }
+
+    @Test
+    void leasesFirstFreeWorkerId() {
+        worker.heartbeat();
+
+        assertEquals(1L, worker.getWorkerId());
+    }
+
+    @Test
+    void failsWhenNoWorkerIdIsFree() {
+        when(valueOperations.setIfAbsent(eq(ID_WORKER_KEY + 1), anyString(), anyLong(), any())).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> worker.heartbeat());
+    }
+
+    @Test
+    void renewsLeaseWithoutReleasing() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(1L);
+        worker.heartbeat();
+
+        worker.heartbeat();
+
+        assertEquals(1L, worker.getWorkerId());
+        verify(valueOperations, times(1)).setIfAbsent(eq(ID_WORKER_KEY + 1), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void leasesAgainWhenRenewFails() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(0L);
+        worker.heartbeat();
+
+        worker.heartbeat();
+
+        assertEquals(1L, worker.getWorkerId());
+        verify(valueOperations, times(2)).setIfAbsent(eq(ID_WORKER_KEY + 1), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void idLayout() {
+        worker.heartbeat();
+
+        assertEquals(id(100L, 0L), worker.nextId());
+        assertEquals(id(100L, 1L), worker.nextId());
+        //进入下一秒后序列号归零
+        clock.set(101L);
+        assertEquals(id(101L, 0L), worker.nextId());
+    }
+
+    @Test
+    void waitsForNextSecondWhenSequenceIsExhausted() throws Exception {
+        worker.heartbeat();
+        long last = 0L;
+        for (long i = 0; i <= MAX_SEQUENCE; i++) {
+            long id = worker.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+        assertEquals(id(100L, MAX_SEQUENCE), last);
+
+        //序列号用完后不借用未来的时间戳，等时钟进入下一秒
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> next = pool.submit(() -> worker.nextId());
+            assertThrows(TimeoutException.class, () -> next.get(100, TimeUnit.MILLISECONDS));
+            clock.set(101L);
+            assertEquals(id(101L, 0L), next.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(id(101L, 1L), worker.nextId());
+    }
+
+    @Test
+    void overflowDoesNotLookLikeClockBackward() {
+        worker.heartbeat();
+        //连续多秒用完序列号，时间戳始终跟随时钟，不会超前
+        for (long second = 100L; second < 108L; second++) {
+            clock.set(second);
+            for (long i = 0; i <= MAX_SEQUENCE; i++) {
+                worker.nextId();
+            }
+        }
+        clock.set(108L);
+
+        assertEquals(id(108L, 0L), worker.nextId());
+    }
+
+    @Test
+    void toleratesSmallClockBackward() {
+        worker.heartbeat();
+        long first = worker.nextId();
+
+        clock.set(95L);
+        long second = worker.nextId();
+
+        assertTrue(second > first);
+        assertEquals(id(100L, 1L), second);
+    }
+
+    @Test
+    void rejectsLargeClockBackward() {
+        worker.heartbeat();
+        worker.nextId();
+
+        clock.set(94L);
+
+        assertThrows(IllegalStateException.class, () -> worker.nextId());
+    }
+
+    private static long id(long timestamp, long sequence) {
+        return timestamp << (WORKER_BITS + SEQUENCE_BITS) | 1L << SEQUENCE_BITS | sequence;
+    }
+}
@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void startsFullAndAllowsBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(1D, 3D);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void nanosToNextPermit() {
+        TokenBucket bucket = new TokenBucket(1D, 1D);
+        assertEquals(0L, bucket.nanosToNextPermit());
+
+        assertTrue(bucket.tryAcquire());
+
+        long nanos = bucket.nanosToNextPermit();
+        assertTrue(nanos > 0L && nanos <= TimeUnit.SECONDS.toNanos(1), "nanos=" + nanos);
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100D, 1D);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        //每10ms生成一个令牌
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void doesNotRefillBeyondCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100D, 2D);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+
+        //空闲期间最多攒满容量
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}